@@ -0,0 +1,73 @@
+package com.github.dockerunit.deployer.benchmarks;
+
+import com.github.dockerunit.core.ServiceContext;
+import com.github.dockerunit.deployer.ServiceRegistry;
+import com.github.dockerunit.deployer.util.ServiceContexts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merges the per-service contexts produced by a startup into a single context.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextMergeBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int services;
+
+    @Param({"1", "10"})
+    private int instancesPerService;
+
+    private List<ServiceContext> contexts;
+
+    @Setup
+    public void setup() {
+        contexts = SyntheticContexts.perServiceContexts(services, instancesPerService);
+    }
+
+    /**
+     * The pairwise fold formerly used by DockerUnitSetup.
+     */
+    @Benchmark
+    public ServiceContext pairwiseMerge() {
+        List<ServiceContext> copy = new ArrayList<>(contexts);
+        ServiceContext completeContext = copy.remove(0);
+        for (ServiceContext serviceContext : copy) {
+            completeContext = completeContext.merge(serviceContext);
+        }
+        return completeContext;
+    }
+
+    @Benchmark
+    public ServiceContext bulkMerge() {
+        return ServiceContexts.mergeAll(contexts);
+    }
+
+    @Benchmark
+    public ServiceContext registryMerge() {
+        ServiceRegistry registry = ServiceRegistry.empty();
+        for (ServiceContext serviceContext : contexts) {
+            registry = registry.merge(serviceContext);
+        }
+        return registry.toContext();
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.github.dockerunit.deployer.benchmarks;
+
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceContext;
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.core.internal.service.DefaultServiceContext;
+import com.github.dockerunit.deployer.ServiceRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Removes one instance of one service, as done when scaling down.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextUpdateBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int services;
+
+    @Param({"1", "10"})
+    private int instancesPerService;
+
+    private ServiceContext context;
+    private ServiceRegistry registry;
+    private Service target;
+    private Set<ServiceInstance> removed;
+
+    @Setup
+    public void setup() {
+        registry = ServiceRegistry.empty();
+        for (ServiceContext ctx : SyntheticContexts.perServiceContexts(services, instancesPerService)) {
+            registry = registry.merge(ctx);
+        }
+        context = registry.toContext();
+        target = registry.getService("svc-0");
+        removed = Collections.singleton(target.getInstances().iterator().next());
+    }
+
+    /**
+     * The whole-context rebuild historically used by LifecycleCommands.cleanContext.
+     */
+    @Benchmark
+    public ServiceContext rebuildContext() {
+        return new DefaultServiceContext(context.getServices().stream()
+                .map(service -> {
+                    if (service.getName().equals(target.getName())) {
+                        return new Service(service.getName(),
+                                service.getInstances()
+                                        .stream()
+                                        .filter(si -> !removed.contains(si))
+                                        .collect(Collectors.toSet()),
+                                service.getDescriptor());
+                    }
+                    return service;
+                })
+                .collect(Collectors.toSet()));
+    }
+
+    @Benchmark
+    public ServiceRegistry registryUpdate() {
+        return registry.withoutInstances(target.getName(), removed);
+    }
+
+}
@@ -0,0 +1,62 @@
+package com.github.dockerunit.deployer.benchmarks;
+
+import com.github.dockerunit.core.ServiceContext;
+import com.github.dockerunit.core.internal.ServiceDescriptor;
+import com.github.dockerunit.deployer.DockerUnitSetup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a whole startup against stubs that simulate container creation and discovery latency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SetupOrchestrationBenchmark {
+
+    @Param({"20"})
+    private int services;
+
+    @Param({"1", "4"})
+    private int waves;
+
+    @Param({"1", "4", "16"})
+    private int poolSize;
+
+    @Param({"50"})
+    private long buildLatencyMs;
+
+    @Param({"50"})
+    private long discoveryLatencyMs;
+
+    private DockerUnitSetup setup;
+    private List<ServiceDescriptor> usages;
+
+    @Setup
+    public void setup() {
+        setup = new DockerUnitSetup(new StubServiceContextBuilder(buildLatencyMs),
+                new StubDiscoveryProvider(discoveryLatencyMs), poolSize, null);
+        usages = SyntheticContexts.descriptors(services, waves);
+    }
+
+    @Benchmark
+    public ServiceContext setupServices() {
+        return setup.setup(usages);
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.github.dockerunit.deployer.benchmarks;
+
+import com.github.dockerunit.core.ServiceContext;
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.core.discovery.DiscoveryProvider;
+import com.github.dockerunit.core.internal.service.DefaultServiceContext;
+
+import java.util.stream.Collectors;
+
+/**
+ * Simulates discovery by sleeping for a fixed latency per populated context.
+ */
+public class StubDiscoveryProvider implements DiscoveryProvider {
+
+    private final long latencyMs;
+
+    public StubDiscoveryProvider(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    @Override
+    public Class<?> getDiscoveryConfig() {
+        return StubDiscoveryProvider.class;
+    }
+
+    @Override
+    public ServiceContext populateRegistry(ServiceContext context) {
+        StubServiceContextBuilder.Latency.simulate(latencyMs);
+        return new DefaultServiceContext(context.getServices().stream()
+                .map(svc -> svc.withInstances(svc.getInstances().stream()
+                        .map(si -> si.withStatus(ServiceInstance.Status.DISCOVERED))
+                        .collect(Collectors.toSet())))
+                .collect(Collectors.toSet()));
+    }
+
+    @Override
+    public ServiceContext clearRegistry(ServiceContext context, ServiceContext globalContext) {
+        return context;
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.github.dockerunit.deployer.benchmarks;
+
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceContext;
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.core.internal.ServiceContextBuilder;
+import com.github.dockerunit.core.internal.ServiceDescriptor;
+import com.github.dockerunit.core.internal.UsageDescriptor;
+import com.github.dockerunit.core.internal.service.DefaultServiceContext;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Simulates container creation by sleeping for a fixed latency per service.
+ */
+public class StubServiceContextBuilder implements ServiceContextBuilder {
+
+    private final long latencyMs;
+
+    public StubServiceContextBuilder(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    @Override
+    public ServiceContext buildContext(UsageDescriptor descriptor) {
+        Set<Service> services = new HashSet<>();
+        for (ServiceDescriptor sd : descriptor.getUsages()) {
+            services.addAll(buildServiceContext(sd).getServices());
+        }
+        return new DefaultServiceContext(services);
+    }
+
+    @Override
+    public ServiceContext buildServiceContext(ServiceDescriptor descriptor) {
+        Latency.simulate(latencyMs);
+        return SyntheticContexts.context(SyntheticContexts.service(descriptor,
+                Math.max(1, descriptor.getReplicas()), ServiceInstance.Status.STARTED));
+    }
+
+    @Override
+    public ServiceContext clearContext(ServiceContext context) {
+        Latency.simulate(latencyMs);
+        return new DefaultServiceContext(context.getServices().stream()
+                .map(svc -> svc.withInstances(svc.getInstances().stream()
+                        .map(si -> si.withStatus(ServiceInstance.Status.ABORTED))
+                        .collect(Collectors.toSet())))
+                .collect(Collectors.toSet()));
+    }
+
+    static class Latency {
+
+        static void simulate(long latencyMs) {
+            if (latencyMs <= 0) {
+                return;
+            }
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.github.dockerunit.deployer.benchmarks;
+
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceContext;
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.core.internal.ServiceDescriptor;
+import com.github.dockerunit.core.internal.reflect.DefaultServiceDescriptor;
+import com.github.dockerunit.core.internal.service.DefaultServiceContext;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds service contexts and descriptors without Docker.
+ * Descriptors carry the service name in their container name, which is what the stub builder uses.
+ */
+public class SyntheticContexts {
+
+    public static ServiceDescriptor descriptor(String svcName, int priority, int replicas) {
+        return DefaultServiceDescriptor.builder()
+                .containerName(svcName)
+                .priority(priority)
+                .replicas(replicas)
+                .build();
+    }
+
+    public static List<ServiceDescriptor> descriptors(int services, int waves) {
+        List<ServiceDescriptor> result = new ArrayList<>();
+        for (int i = 0; i < services; i++) {
+            result.add(descriptor("svc-" + i, i % Math.max(1, waves), 1));
+        }
+        return result;
+    }
+
+    public static ServiceInstance instance(String svcName, int index, ServiceInstance.Status status) {
+        String id = String.format("%s-%06d-0123456789abcdef", svcName, index);
+        return ServiceInstance.builder()
+                .containerId(id)
+                .containerName("/" + svcName + "-" + index)
+                .gatewayAddress("172.17.0.1")
+                .gatewayPort(30000 + index)
+                .containerIp("172.17.0." + (index % 250 + 2))
+                .containerPort(8080)
+                .status(status)
+                .statusDetails("")
+                .build();
+    }
+
+    public static Service service(ServiceDescriptor sd, int instances, ServiceInstance.Status status) {
+        Set<ServiceInstance> result = new HashSet<>();
+        for (int i = 0; i < instances; i++) {
+            result.add(instance(sd.getContainerName(), i, status));
+        }
+        return new Service(sd.getContainerName(), result, sd);
+    }
+
+    public static ServiceContext context(Service... services) {
+        Set<Service> result = new HashSet<>();
+        for (Service svc : services) {
+            result.add(svc);
+        }
+        return new DefaultServiceContext(result);
+    }
+
+    /**
+     * Creates one single-service context per service, as produced by a startup.
+     */
+    public static List<ServiceContext> perServiceContexts(int services, int instancesPerService) {
+        List<ServiceContext> result = new ArrayList<>();
+        for (int i = 0; i < services; i++) {
+            result.add(context(service(descriptor("svc-" + i, 0, instancesPerService),
+                    instancesPerService, ServiceInstance.Status.DISCOVERED)));
+        }
+        return result;
+    }
+
+}
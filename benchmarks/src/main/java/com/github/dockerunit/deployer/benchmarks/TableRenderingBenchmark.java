@@ -0,0 +1,51 @@
+package com.github.dockerunit.deployer.benchmarks;
+
+import com.github.dockerunit.deployer.util.TableFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds and renders an instances table like the one printed by list-instances.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableRenderingBenchmark {
+
+    private static final String[] HEADER = {"svc", "container-name", "container-id", "gateway", "gateway-port",
+            "container-ip", "container-port", "status"};
+
+    @Param({"10", "100", "1000"})
+    private int rows;
+
+    private String[][] data;
+
+    @Setup
+    public void setup() {
+        data = new String[rows][HEADER.length];
+        for (int i = 0; i < rows; i++) {
+            data[i] = new String[] {" svc-" + (i % 10) + " ", " svc-" + i + " ", " 0123456789ab ", " 172.17.0.1 ",
+                    " " + (30000 + i) + " ", " 172.17.0." + (i % 250 + 2) + " ", " 8080 ", " DISCOVERED "};
+        }
+    }
+
+    @Benchmark
+    public String createAndRender() {
+        return TableFactory.createTable(HEADER, data).render(200);
+    }
+
+}
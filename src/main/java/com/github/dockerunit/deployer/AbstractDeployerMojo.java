@@ -0,0 +1,299 @@
+package com.github.dockerunit.deployer;
+
+import com.github.dockerunit.deployer.util.Hashes;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Resource;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.DefaultDependencyResolutionRequest;
+import org.apache.maven.project.DependencyResolutionException;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectDependenciesResolver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Configuration shared by all the goals of the plugin.
+ */
+public abstract class AbstractDeployerMojo extends AbstractMojo {
+
+    @Parameter(defaultValue="${project}", readonly=true, required=true)
+    protected MavenProject project;
+
+    @Parameter(defaultValue = "${session}", readonly = true, required = true)
+    private MavenSession session;
+
+    @Component
+    private ProjectDependenciesResolver dependenciesResolver;
+
+    @Parameter( property = "dockerunit-deployer.className")
+    protected String className;
+
+    /**
+     * Additional Dockerunit classes, by stack name. The {@code className} is the {@code default} stack.
+     */
+    @Parameter
+    private Map<String, String> stacks;
+
+    @Parameter(property = "dockerunit-deployer.startupPoolSize", defaultValue = "4")
+    private int startupPoolSize;
+
+    @Parameter(property = "dockerunit-deployer.scalingParallelism", defaultValue = "4")
+    private int scalingParallelism;
+
+    @Parameter(property = "dockerunit-deployer.maxReplicas", defaultValue = "10")
+    private int maxReplicas;
+
+    @Parameter(property = "dockerunit-deployer.warmPoolSize", defaultValue = "0")
+    private int warmPoolSize;
+
+    @Parameter
+    private Map<String, String> warmPoolSizes;
+
+    @Parameter(property = "dockerunit-deployer.evictWarmPoolOnShutdown", defaultValue = "true")
+    private boolean evictWarmPoolOnShutdown;
+
+    @Parameter(property = "dockerunit-deployer.sessionFile", defaultValue = "${project.build.directory}/dude-session.tsv")
+    private File sessionFile;
+
+    @Parameter(property = "dockerunit-deployer.attach", defaultValue = "false")
+    private boolean attach;
+
+    @Parameter(property = "dockerunit-deployer.reuseContainers", defaultValue = "false")
+    private boolean reuseContainers;
+
+    @Parameter(property = "dockerunit-deployer.metricsDirectory", defaultValue = "${project.build.directory}")
+    private File metricsDirectory;
+
+    @Parameter(property = "dockerunit-deployer.watchFrameRate", defaultValue = "4")
+    private int watchFrameRate;
+
+    @Parameter(property = "dockerunit-deployer.healthCheckInterval", defaultValue = "10")
+    private int healthCheckInterval;
+
+    @Parameter(property = "dockerunit-deployer.healthCheckConcurrency", defaultValue = "2")
+    private int healthCheckConcurrency;
+
+    @Parameter(property = "dockerunit-deployer.healthCheckBatchSize", defaultValue = "50")
+    private int healthCheckBatchSize;
+
+    @Parameter(property = "dockerunit-deployer.healthCheckFailureThreshold", defaultValue = "2")
+    private int healthCheckFailureThreshold;
+
+    @Parameter(property = "dockerunit-deployer.autoHeal", defaultValue = "false")
+    private boolean autoHeal;
+
+    @Parameter(property = "dockerunit-deployer.healBackoff", defaultValue = "5")
+    private int healBackoff;
+
+    @Parameter(property = "dockerunit-deployer.reloadOnChange", defaultValue = "false")
+    private boolean reloadOnChange;
+
+    @Parameter(property = "dockerunit-deployer.teardownParallelism", defaultValue = "8")
+    private int teardownParallelism;
+
+    @Parameter(property = "dockerunit-deployer.stopTimeout", defaultValue = "10")
+    private int stopTimeout;
+
+    @Parameter(property = "dockerunit-deployer.killOnShutdown", defaultValue = "false")
+    private boolean killOnShutdown;
+
+    @Parameter(property = "dockerunit-deployer.drainDelay", defaultValue = "0")
+    private int drainDelay;
+
+    @Parameter
+    private Map<String, String> dockerEndpoints;
+
+    @Parameter(property = "dockerunit-deployer.placementStrategy", defaultValue = "round-robin")
+    private String placementStrategy;
+
+    @Parameter(property = "dockerunit-deployer.prePullImages", defaultValue = "true")
+    private boolean prePullImages;
+
+    @Parameter(property = "dockerunit-deployer.pullParallelism", defaultValue = "4")
+    private int pullParallelism;
+
+    @Parameter(property = "dockerunit-deployer.skipPresentImages", defaultValue = "true")
+    private boolean skipPresentImages;
+
+    @Parameter(property = "dockerunit-deployer.autoscaleInterval", defaultValue = "15")
+    private int autoscaleInterval;
+
+    @Parameter(property = "dockerunit-deployer.scaleUpCooldown", defaultValue = "60")
+    private int scaleUpCooldown;
+
+    @Parameter(property = "dockerunit-deployer.scaleDownCooldown", defaultValue = "180")
+    private int scaleDownCooldown;
+
+    /**
+     * @return the Dockerunit class of every stack, by stack name, starting with the {@code className}
+     */
+    protected Map<String, String> getStacks() {
+        Map<String, String> result = new LinkedHashMap<>();
+        if (className != null && !className.isEmpty()) {
+            result.put(SvcClassLoadingManager.DEFAULT_STACK, className);
+        }
+        if (stacks != null) {
+            stacks.forEach((stack, svcClassName) -> result.put(stack, svcClassName.trim()));
+        }
+        return result;
+    }
+
+    /**
+     * Validates the configuration and publishes it to the {@link DeployerSettings}.
+     */
+    protected void configure() throws MojoExecutionException {
+        if ((null == className || className.isEmpty()) && (stacks == null || stacks.isEmpty())) {
+            throw new MojoExecutionException("You must specify the fully qualified name of the Dockerunit class to run " +
+                    "using the <className> tag inside the plugin <configuration>, or a class per stack using <stacks>.");
+        }
+        if (className != null && !className.isEmpty() && stacks != null
+                && stacks.containsKey(SvcClassLoadingManager.DEFAULT_STACK)) {
+            throw new MojoExecutionException("The <className> is the " + SvcClassLoadingManager.DEFAULT_STACK
+                    + " stack, it cannot be declared in <stacks> as well.");
+        }
+
+        if (startupPoolSize < 1) {
+            throw new MojoExecutionException("The <startupPoolSize> must be at least 1.");
+        }
+        if (scalingParallelism < 1) {
+            throw new MojoExecutionException("The <scalingParallelism> must be at least 1.");
+        }
+        if (maxReplicas < 1) {
+            throw new MojoExecutionException("The <maxReplicas> must be at least 1.");
+        }
+        if (watchFrameRate < 1) {
+            throw new MojoExecutionException("The <watchFrameRate> must be at least 1.");
+        }
+        if (pullParallelism < 1) {
+            throw new MojoExecutionException("The <pullParallelism> must be at least 1.");
+        }
+        DeployerSettings.setStartupPoolSize(startupPoolSize);
+        DeployerSettings.setScalingParallelism(scalingParallelism);
+        DeployerSettings.setMaxReplicas(maxReplicas);
+        try {
+            DeployerSettings.setWarmPoolSize(warmPoolSize);
+            if (warmPoolSizes != null) {
+                DeployerSettings.setWarmPoolSizes(warmPoolSizes.entrySet()
+                        .stream()
+                        .collect(Collectors.toMap(Map.Entry::getKey, e -> Integer.parseInt(e.getValue().trim()))));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException("Invalid warm pool configuration: " + e.getMessage(), e);
+        }
+        DeployerSettings.setEvictWarmPoolOnShutdown(evictWarmPoolOnShutdown);
+        DeployerSettings.setSessionFile(sessionFile.toPath());
+        DeployerSettings.setAttach(attach);
+        DeployerSettings.setReuseContainers(reuseContainers);
+        DeployerSettings.setMetricsDirectory(metricsDirectory.toPath());
+        DeployerSettings.setWatchFrameRate(watchFrameRate);
+        try {
+            DeployerSettings.setHealthCheckInterval(healthCheckInterval);
+            DeployerSettings.setHealthCheckConcurrency(healthCheckConcurrency);
+            DeployerSettings.setHealthCheckBatchSize(healthCheckBatchSize);
+            DeployerSettings.setHealthCheckFailureThreshold(healthCheckFailureThreshold);
+            DeployerSettings.setHealBackoff(healBackoff);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException("Invalid health monitor configuration: " + e.getMessage(), e);
+        }
+        DeployerSettings.setAutoHeal(autoHeal);
+        DeployerSettings.setReloadOnChange(reloadOnChange);
+        try {
+            DeployerSettings.setTeardownParallelism(teardownParallelism);
+            DeployerSettings.setStopTimeout(stopTimeout);
+            DeployerSettings.setDrainDelay(drainDelay);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException("Invalid teardown configuration: " + e.getMessage(), e);
+        }
+        DeployerSettings.setKillOnShutdown(killOnShutdown);
+        if (dockerEndpoints != null) {
+            DeployerSettings.setDockerEndpoints(dockerEndpoints.entrySet()
+                    .stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().trim(), (h1, h2) -> h1, LinkedHashMap::new)));
+        }
+        DeployerSettings.setPlacementStrategy(placementStrategy);
+        DeployerSettings.setPrePullImages(prePullImages);
+        DeployerSettings.setPullParallelism(pullParallelism);
+        DeployerSettings.setSkipPresentImages(skipPresentImages);
+        try {
+            DeployerSettings.setAutoscaleInterval(autoscaleInterval);
+            DeployerSettings.setScaleUpCooldown(scaleUpCooldown);
+            DeployerSettings.setScaleDownCooldown(scaleDownCooldown);
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException("Invalid autoscaler configuration: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Returns the test classpath of the project, including the test resources.
+     * The classpath is cached under the build directory. The goals do not ask Maven to resolve the dependencies,
+     * as they are only resolved here when the declared dependencies have changed since the classpath was cached.
+     */
+    protected List<String> resolveClasspath() throws MojoExecutionException {
+        String dependencyHash = dependencyHash();
+        ClasspathIndex index = new ClasspathIndex(new File(project.getBuild().getDirectory(), "dude-classpath.idx").toPath());
+        Optional<List<String>> cached = index.load(dependencyHash);
+        if (cached.isPresent()) {
+            getLog().debug("Using cached classpath index.");
+            return cached.get();
+        }
+
+        List<String> directories = projectDirectories().collect(Collectors.toList());
+        return index.save(dependencyHash, directories, resolveDependencies());
+    }
+
+    /**
+     * Resolves the dependencies of the project in every scope, as for the test classpath.
+     */
+    private List<String> resolveDependencies() throws MojoExecutionException {
+        try {
+            return dependenciesResolver.resolve(new DefaultDependencyResolutionRequest(project, session.getRepositorySession()))
+                    .getDependencies()
+                    .stream()
+                    .map(dependency -> dependency.getArtifact().getFile())
+                    .filter(Objects::nonNull)
+                    .map(File::getAbsolutePath)
+                    .collect(Collectors.toList());
+        } catch (DependencyResolutionException e) {
+            throw new MojoExecutionException("Could not resolve the dependencies of the project.", e);
+        }
+    }
+
+    private Stream<String> projectDirectories() {
+        return Stream.concat(
+                Stream.of(project.getBuild().getTestOutputDirectory(), project.getBuild().getOutputDirectory()),
+                project.getTestResources().stream().map(Resource::getDirectory).distinct());
+    }
+
+    /**
+     * Hashes the dependencies as declared in the model, which is available without resolving them.
+     */
+    private String dependencyHash() {
+        List<Dependency> declared = new ArrayList<>(project.getDependencies());
+        if (project.getDependencyManagement() != null) {
+            declared.addAll(project.getDependencyManagement().getDependencies());
+        }
+        Stream<String> dependencies = declared.stream()
+                .map(d -> String.join(":", d.getManagementKey(), String.valueOf(d.getVersion()),
+                        String.valueOf(d.getScope()), String.valueOf(d.getSystemPath()))
+                        + d.getExclusions().stream()
+                        .map(e -> e.getGroupId() + ":" + e.getArtifactId())
+                        .sorted()
+                        .collect(Collectors.joining(",", "!", "")));
+        return Hashes.sha256(Stream.concat(dependencies, projectDirectories())
+                .sorted()
+                .collect(Collectors.joining("\n")));
+    }
+
+}
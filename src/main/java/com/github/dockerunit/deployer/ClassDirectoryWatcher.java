@@ -0,0 +1,118 @@
+package com.github.dockerunit.deployer;
+
+import com.github.dockerunit.deployer.util.ThreadFactories;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Watches the class path directories of the project and notifies a listener once they stop changing.
+ * Changes are debounced, so that a build writing many class files triggers a single notification.
+ */
+public class ClassDirectoryWatcher {
+
+    private static final Logger logger = Logger.getLogger(ClassDirectoryWatcher.class.getSimpleName());
+
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    private final Runnable onChange;
+
+    private WatchService watchService;
+    private Thread thread;
+
+    public ClassDirectoryWatcher(Runnable onChange) {
+        this.onChange = onChange;
+    }
+
+    public synchronized void start(List<Path> directories) throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        for (Path dir : directories) {
+            register(watchService, dir);
+        }
+        WatchService watching = watchService;
+        thread = ThreadFactories.named("dude-class-watcher").newThread(() -> watch(watching));
+        thread.start();
+    }
+
+    public synchronized void stop() {
+        if (watchService == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.warning("Could not close the class directory watcher: " + e.getMessage());
+        }
+        thread.interrupt();
+        watchService = null;
+        thread = null;
+    }
+
+    public synchronized boolean isRunning() {
+        return watchService != null;
+    }
+
+    private void watch(WatchService watching) {
+        try {
+            while (true) {
+                // Waits for a first change, then for the directories to be quiet for the debounce period
+                WatchKey key = watching.take();
+                while (key != null) {
+                    handle(watching, key);
+                    key = watching.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                try {
+                    onChange.run();
+                } catch (RuntimeException e) {
+                    logger.warning("Reload failed: " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // The watcher has been stopped
+        }
+    }
+
+    private static void handle(WatchService watching, WatchKey key) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                Path created = dir.resolve((Path) event.context());
+                if (Files.isDirectory(created)) {
+                    register(watching, created);
+                }
+            }
+        }
+        key.reset();
+    }
+
+    private static void register(WatchService watching, Path root) {
+        try (Stream<Path> dirs = Files.walk(root)) {
+            dirs.filter(Files::isDirectory).forEach(dir -> {
+                try {
+                    dir.register(watching, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                } catch (IOException e) {
+                    logger.warning("Could not watch " + dir + ": " + e.getMessage());
+                }
+            });
+        } catch (IOException | UncheckedIOException e) {
+            logger.warning("Could not watch " + root + ": " + e.getMessage());
+        }
+    }
+
+}
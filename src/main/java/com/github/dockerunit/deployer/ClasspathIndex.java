@@ -0,0 +1,70 @@
+package com.github.dockerunit.deployer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.logging.Logger;
+
+/**
+ * Caches the classpath of the Dockerunit class under the build directory.
+ * The index is keyed by a hash of the project dependencies, so it is only rebuilt when they change.
+ * Dependencies that do not exist are dropped when the index is built, so the class loader does not have to probe
+ * them. The directories of the project are all kept, as they may only be created by a later build.
+ */
+public class ClasspathIndex {
+
+    private static final Logger logger = Logger.getLogger(ClasspathIndex.class.getSimpleName());
+
+    private static final String HEADER = "# dude-classpath ";
+
+    private final Path file;
+
+    public ClasspathIndex(Path file) {
+        this.file = file;
+    }
+
+    public Optional<List<String>> load(String dependencyHash) {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            if (lines.isEmpty() || !lines.get(0).equals(HEADER + dependencyHash)) {
+                return Optional.empty();
+            }
+            return Optional.of(new ArrayList<>(lines.subList(1, lines.size())));
+        } catch (IOException e) {
+            logger.warning("Could not read classpath index " + file + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return the classpath: the directories, followed by the dependencies that exist
+     */
+    public List<String> save(String dependencyHash, List<String> directories, List<String> dependencies) {
+        List<String> existing = new ArrayList<>(new LinkedHashSet<>(directories));
+        for (String element : dependencies) {
+            if (new File(element).exists() && !existing.contains(element)) {
+                existing.add(element);
+            }
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER + dependencyHash);
+        lines.addAll(existing);
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Files.write(file, lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            logger.warning("Could not write classpath index " + file + ": " + e.getMessage());
+        }
+        return existing;
+    }
+
+}
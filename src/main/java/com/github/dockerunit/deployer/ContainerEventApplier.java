@@ -0,0 +1,75 @@
+package com.github.dockerunit.deployer;
+
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.deployer.docker.ContainerEvent;
+
+import java.util.Objects;
+
+/**
+ * Applies container events to the instances held by the {@link ServiceContextProvider}, so that their status can be
+ * followed without inspecting the containers.
+ */
+public class ContainerEventApplier {
+
+    /**
+     * Updates the instance the event refers to, if it is tracked.
+     *
+     * @return true if the registry has changed
+     */
+    public static boolean apply(ContainerEvent event) {
+        ServiceRegistry current;
+        ServiceRegistry updated;
+        do {
+            current = ServiceContextProvider.getSvcRegistry();
+            updated = apply(current, event);
+            if (updated == current) {
+                return false;
+            }
+        } while (!ServiceContextProvider.compareAndSetSvcRegistry(current, updated));
+        return true;
+    }
+
+    static ServiceRegistry apply(ServiceRegistry registry, ContainerEvent event) {
+        Service svc = registry.findServiceByContainerId(event.getContainerId());
+        if (svc == null) {
+            return registry;
+        }
+        ServiceInstance current = registry.getInstance(svc.getName(), event.getContainerId());
+        ServiceInstance updated = transition(current, event.getAction());
+        if (updated.getStatus() == current.getStatus()
+                && Objects.equals(updated.getStatusDetails(), current.getStatusDetails())) {
+            return registry;
+        }
+        return registry.withInstance(svc.getName(), svc.getDescriptor(), updated);
+    }
+
+    private static ServiceInstance transition(ServiceInstance si, String action) {
+        if (action.startsWith("health_status:")) {
+            return si.withStatusDetails("Container is" + action.substring("health_status:".length()) + ".");
+        }
+        switch (action) {
+            case "die":
+            case "kill":
+            case "oom":
+            case "stop":
+            case "destroy":
+                return si.withStatus(ServiceInstance.Status.ABORTED)
+                        .withStatusDetails("Container received " + action + " event.");
+            case "start":
+            case "restart":
+                // A container that comes back is running again, but its discovery has to be redone
+                return si.hasStatus(ServiceInstance.Status.ABORTED)
+                        ? si.withStatus(ServiceInstance.Status.STARTED)
+                                .withStatusDetails("Container received " + action + " event.")
+                        : si;
+            case "pause":
+                return si.withStatusDetails("Container is paused.");
+            case "unpause":
+                return si.withStatusDetails("Container is running.");
+            default:
+                return si;
+        }
+    }
+
+}
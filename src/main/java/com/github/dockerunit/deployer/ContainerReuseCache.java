@@ -0,0 +1,138 @@
+package com.github.dockerunit.deployer;
+
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceContext;
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.core.internal.ServiceContextBuilder;
+import com.github.dockerunit.core.internal.ServiceDescriptor;
+import com.github.dockerunit.core.internal.UsageDescriptor;
+import com.github.dockerunit.core.internal.service.DefaultServiceContext;
+import com.github.dockerunit.deployer.docker.DockerClients;
+import com.github.dockerunit.deployer.util.Descriptors;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Holds the containers of a previous session that can be adopted instead of being recreated.
+ * A service is adoptable when its containers have not changed since the session was saved and all of them are
+ * still running. Services that have been scaled are adopted too: the extra containers are removed and the missing
+ * ones are created on adoption, so that the service runs the replicas of its descriptor.
+ * The containers of every other service of the session are removed by container id when the cache is prepared,
+ * so they can be recreated from scratch, even if their service is not declared anymore.
+ */
+public class ContainerReuseCache {
+
+    private static final Logger logger = Logger.getLogger(ContainerReuseCache.class.getSimpleName());
+
+    private final Map<String, ServiceContext> adoptable;
+    private final ServiceContextBuilder contextBuilder;
+
+    private ContainerReuseCache(Map<String, ServiceContext> adoptable, ServiceContextBuilder contextBuilder) {
+        this.adoptable = adoptable;
+        this.contextBuilder = contextBuilder;
+    }
+
+    public static ContainerReuseCache prepare(SessionStore.Session session, UsageDescriptor descriptor,
+                                              ServiceContextBuilder contextBuilder) {
+        return prepare(session, descriptor.getUsages(), contextBuilder);
+    }
+
+    /**
+     * Prepares the cache for the given services. The containers of the session that do not belong to any of them
+     * are removed, so the services of every stack must be given.
+     */
+    public static ContainerReuseCache prepare(SessionStore.Session session, List<ServiceDescriptor> usages,
+                                              ServiceContextBuilder contextBuilder) {
+        Map<String, ServiceContext> adoptable = new ConcurrentHashMap<>();
+        Set<Service> toBeRemoved = new HashSet<>();
+        session.getServices().forEach((svcName, instances) -> {
+            Optional<ServiceDescriptor> sd = usages.stream()
+                    .filter(usage -> svcName.equals(Descriptors.serviceName(usage)))
+                    .findFirst();
+            if (!sd.isPresent() || !isReusable(session, svcName, sd.get(), instances)) {
+                logger.info("Svc " + svcName + " has changed since the previous session, its containers will be recreated.");
+                toBeRemoved.add(new Service(svcName, new HashSet<>(instances), null));
+                return;
+            }
+
+            logger.info("Reusing the containers of svc " + svcName);
+            int replicas = Math.min(instances.size(), sd.get().getReplicas());
+            Set<ServiceInstance> reused = new HashSet<>(instances.subList(0, replicas));
+            adoptable.put(svcName, toContext(new Service(svcName, reused, sd.get())));
+            if (replicas < instances.size()) {
+                toBeRemoved.add(new Service(svcName, new HashSet<>(instances.subList(replicas, instances.size())), null));
+            }
+        });
+        removeContainers(toBeRemoved);
+        return new ContainerReuseCache(adoptable, contextBuilder);
+    }
+
+    /**
+     * Removes the containers by id, as the services they belong to may not have a descriptor anymore.
+     */
+    private static void removeContainers(Set<Service> services) {
+        if (services.isEmpty()) {
+            return;
+        }
+        ContainerTeardown.Result result = new ContainerTeardown(null, true)
+                .tearDown(new DefaultServiceContext(services), null);
+        if (!result.isComplete()) {
+            logger.warning("Could not remove " + result.getFailures().size() + " containers of the previous session.");
+        }
+    }
+
+    /**
+     * Returns the adoptable context of the given service, or null if its containers must be created.
+     * The replicas the previous session was short of are created. The returned context is not discovered yet.
+     */
+    public ServiceContext adopt(ServiceDescriptor sd) {
+        ServiceContext ctx = adoptable.remove(Descriptors.serviceName(sd));
+        if (ctx == null) {
+            return null;
+        }
+        Set<ServiceInstance> instances = ctx.getServices().stream()
+                .flatMap(svc -> svc.getInstances().stream())
+                .map(si -> si.withStatus(ServiceInstance.Status.STARTED)
+                        .withStatusDetails("Reused from the previous session."))
+                .collect(Collectors.toSet());
+        int missing = sd.getReplicas() - instances.size();
+        if (missing > 0) {
+            boolean randomise = sd.getContainerName() != null && !sd.getContainerName().isEmpty();
+            try {
+                contextBuilder.buildServiceContext(ServiceScaler.buildDeltaDescriptor(sd, missing, randomise))
+                        .getServices()
+                        .forEach(svc -> instances.addAll(svc.getInstances()));
+            } catch (RuntimeException e) {
+                // The reused containers are still handed out, so that they stay tracked
+                logger.warning("Could not create the missing replicas of svc " + Descriptors.serviceName(sd) + ": "
+                        + e.getMessage());
+            }
+        }
+        return toContext(new Service(Descriptors.serviceName(sd), instances, sd));
+    }
+
+    private static ServiceContext toContext(Service svc) {
+        Set<Service> services = new HashSet<>();
+        services.add(svc);
+        return new DefaultServiceContext(services);
+    }
+
+    public int size() {
+        return adoptable.size();
+    }
+
+    private static boolean isReusable(SessionStore.Session session, String svcName, ServiceDescriptor sd,
+                                      List<ServiceInstance> instances) {
+        return Descriptors.replicaFingerprint(sd).equals(session.getFingerprints().get(svcName))
+                && !instances.isEmpty()
+                && instances.stream().allMatch(si -> DockerClients.isRunning(si.getContainerId()));
+    }
+
+}
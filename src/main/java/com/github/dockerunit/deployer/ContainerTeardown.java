@@ -0,0 +1,225 @@
+package com.github.dockerunit.deployer;
+
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceContext;
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.core.discovery.DiscoveryProvider;
+import com.github.dockerunit.core.internal.service.DefaultServiceContext;
+import com.github.dockerunit.deployer.docker.DockerClients;
+import com.github.dockerunit.deployer.metrics.MetricsRegistry;
+import com.github.dockerunit.deployer.placement.PlacementScheduler;
+import com.github.dockerunit.deployer.util.Futures;
+import com.github.dockerunit.deployer.util.PriorityWaves;
+import com.github.dockerunit.deployer.util.TableFactory;
+import com.github.dockerunit.deployer.util.ThreadFactories;
+import lombok.Value;
+import org.springframework.shell.table.Table;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Removes the containers of the services.
+ * Services are stopped in waves of equal priority, in the reverse order Dockerunit starts them in (lowest priority
+ * first), so that a service is still running while the services that depend on it are being stopped.
+ * The instances of a wave are deregistered with a single call to the discovery provider and given
+ * {@code drainDelay} seconds for the remaining consumers to stop using them, then their containers are stopped
+ * and removed concurrently, on up to {@code teardownParallelism} threads. A container that cannot be removed does
+ * not stop the others: it is reported as a failure and stays tracked.
+ */
+public class ContainerTeardown {
+
+    private static final Logger logger = Logger.getLogger(ContainerTeardown.class.getSimpleName());
+
+    private final DiscoveryProvider discoveryProvider;
+    private final boolean kill;
+
+    /**
+     * @param discoveryProvider the provider the instances are deregistered from, or null to only remove the containers
+     * @param kill              whether containers are killed instead of being given {@code stopTimeout} seconds to exit
+     */
+    public ContainerTeardown(DiscoveryProvider discoveryProvider, boolean kill) {
+        this.discoveryProvider = discoveryProvider;
+        this.kill = kill;
+    }
+
+    public ContainerTeardown(DiscoveryProvider discoveryProvider) {
+        this(discoveryProvider, DeployerSettings.isKillOnShutdown());
+    }
+
+    /**
+     * Deregisters the instances of the context and removes their containers, one priority wave at a time.
+     * Services without a descriptor are stopped in the first wave.
+     *
+     * @param remaining the services that stay registered
+     */
+    public Result tearDown(ServiceContext context, ServiceContext remaining) {
+        return MetricsRegistry.time(MetricsRegistry.TEARDOWN, null, () -> {
+            List<List<Service>> waves = PriorityWaves.group(context.getServices(), ContainerTeardown::priority);
+            Collections.reverse(waves);
+            List<Removal> removed = new ArrayList<>();
+            List<Failure> failures = new ArrayList<>();
+            for (int i = 0; i < waves.size(); i++) {
+                List<Service> wave = waves.get(i);
+                // The services of the following waves stay registered until their own wave is stopped
+                Set<Service> stillRegistered = new HashSet<>();
+                if (remaining != null) {
+                    stillRegistered.addAll(remaining.getServices());
+                }
+                waves.subList(i + 1, waves.size()).forEach(stillRegistered::addAll);
+
+                ServiceContext waveContext = new DefaultServiceContext(new HashSet<>(wave));
+                deregister(waveContext, new DefaultServiceContext(stillRegistered));
+                if (discoveryProvider != null && !stillRegistered.isEmpty()) {
+                    drain();
+                }
+                Result result = remove(waveContext);
+                removed.addAll(result.getRemoved());
+                failures.addAll(result.getFailures());
+            }
+            return new Result(removed, failures);
+        });
+    }
+
+    private static int priority(Service svc) {
+        return svc.getDescriptor() == null ? Integer.MIN_VALUE : svc.getDescriptor().getPriority();
+    }
+
+    private void deregister(ServiceContext wave, ServiceContext stillRegistered) {
+        if (discoveryProvider == null) {
+            return;
+        }
+        try {
+            discoveryProvider.clearRegistry(wave, stillRegistered);
+        } catch (RuntimeException e) {
+            // Containers are removed anyway, the discovery provider is usually removed next
+            logger.warning("Could not deregister the services: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gives the consumers that are still running the time to notice the deregistration. Killed containers are not drained.
+     */
+    private void drain() {
+        int drainDelay = DeployerSettings.getDrainDelay();
+        if (kill || drainDelay <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.SECONDS.sleep(drainDelay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Result remove(ServiceContext context) {
+        List<Removal> removals = new ArrayList<>();
+        for (Service svc : context.getServices()) {
+            svc.getInstances().forEach(si -> removals.add(new Removal(svc.getName(), si)));
+        }
+        List<Removal> withContainer = removals.stream()
+                .filter(r -> r.getInstance().getContainerId() != null)
+                .collect(Collectors.toList());
+        if (withContainer.isEmpty()) {
+            return new Result(removals, Collections.emptyList());
+        }
+
+        int stopTimeout = DeployerSettings.getStopTimeout();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(DeployerSettings.getTeardownParallelism(), withContainer.size()),
+                ThreadFactories.named("dude-teardown"));
+        try {
+            List<Future<Failure>> futures = withContainer.stream()
+                    .map(r -> executor.submit(() -> removeContainer(r, stopTimeout)))
+                    .collect(Collectors.toList());
+            List<Failure> failures = new ArrayList<>();
+            for (Future<Failure> future : futures) {
+                Failure failure = Futures.await(future);
+                if (failure != null) {
+                    failures.add(failure);
+                }
+            }
+            List<Removal> removed = removals.stream()
+                    .filter(r -> failures.stream().noneMatch(f -> f.getRemoval() == r))
+                    .collect(Collectors.toList());
+            return new Result(removed, failures);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Failure removeContainer(Removal removal, int stopTimeout) {
+        try {
+            DockerClients.stopAndRemove(removal.getInstance().getContainerId(), stopTimeout, kill);
+            PlacementScheduler.release(removal.getInstance().getContainerId());
+            return null;
+        } catch (RuntimeException e) {
+            logger.warning("Could not remove container " + removal.getInstance().getContainerName() + ": " + e.getMessage());
+            return new Failure(removal, e.getMessage());
+        }
+    }
+
+    @Value
+    public static class Removal {
+        private final String svcName;
+        private final ServiceInstance instance;
+    }
+
+    @Value
+    public static class Failure {
+        private final Removal removal;
+        private final String error;
+    }
+
+    @Value
+    public static class Result {
+
+        private static final List<TableFactory.Column<Failure>> FAILURE_COLUMNS = Arrays.asList(
+                new TableFactory.Column<>("Svc", f -> f.getRemoval().getSvcName()),
+                new TableFactory.Column<>("Container name", f -> f.getRemoval().getInstance().getContainerName()),
+                new TableFactory.Column<>("Container id", f -> f.getRemoval().getInstance().getContainerId()),
+                new TableFactory.Column<>("Error", Failure::getError));
+
+        private final List<Removal> removed;
+        private final List<Failure> failures;
+
+        public boolean isComplete() {
+            return failures.isEmpty();
+        }
+
+        /**
+         * Removes the instances whose container has been removed from the registry, along with the services
+         * left without instances. The instances that could not be removed stay tracked.
+         */
+        public ServiceRegistry prune(ServiceRegistry registry) {
+            Map<String, List<ServiceInstance>> removedBySvc = removed.stream()
+                    .collect(Collectors.groupingBy(Removal::getSvcName,
+                            Collectors.mapping(Removal::getInstance, Collectors.toList())));
+            ServiceRegistry result = registry;
+            for (Map.Entry<String, List<ServiceInstance>> e : removedBySvc.entrySet()) {
+                result = result.withoutInstances(e.getKey(), e.getValue());
+                Service svc = result.getService(e.getKey());
+                if (svc != null && svc.getInstances().isEmpty()) {
+                    result = result.withoutService(e.getKey());
+                }
+            }
+            return result;
+        }
+
+        public Table failureTable() {
+            return TableFactory.createTable(FAILURE_COLUMNS, failures);
+        }
+    }
+
+}
@@ -0,0 +1,424 @@
+package com.github.dockerunit.deployer;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class DeployerSettings {
+
+    public static final int DEFAULT_STARTUP_POOL_SIZE = 4;
+
+    public static final int DEFAULT_SCALING_PARALLELISM = 4;
+
+    public static final int DEFAULT_MAX_REPLICAS = 10;
+
+    public static final int DEFAULT_WATCH_FRAME_RATE = 4;
+
+    public static final int DEFAULT_HEALTH_CHECK_INTERVAL = 10;
+
+    public static final int DEFAULT_HEALTH_CHECK_CONCURRENCY = 2;
+
+    public static final int DEFAULT_HEALTH_CHECK_BATCH_SIZE = 50;
+
+    public static final int DEFAULT_HEALTH_CHECK_FAILURE_THRESHOLD = 2;
+
+    public static final int DEFAULT_HEAL_BACKOFF = 5;
+
+    public static final int DEFAULT_TEARDOWN_PARALLELISM = 8;
+
+    public static final int DEFAULT_STOP_TIMEOUT = 10;
+
+    public static final String DEFAULT_PLACEMENT_STRATEGY = "round-robin";
+
+    public static final int DEFAULT_PULL_PARALLELISM = 4;
+
+    public static final int DEFAULT_AUTOSCALE_INTERVAL = 15;
+
+    public static final int DEFAULT_SCALE_UP_COOLDOWN = 60;
+
+    public static final int DEFAULT_SCALE_DOWN_COOLDOWN = 180;
+
+    private static int startupPoolSize = DEFAULT_STARTUP_POOL_SIZE;
+
+    private static int scalingParallelism = DEFAULT_SCALING_PARALLELISM;
+
+    private static int maxReplicas = DEFAULT_MAX_REPLICAS;
+
+    private static int warmPoolSize = 0;
+
+    private static Map<String, Integer> warmPoolSizes = Collections.emptyMap();
+
+    private static boolean evictWarmPoolOnShutdown = true;
+
+    private static Path sessionFile = Paths.get("target", "dude-session.tsv");
+
+    private static boolean attach = false;
+
+    private static boolean reuseContainers = false;
+
+    private static Path metricsDirectory = Paths.get("target");
+
+    private static int watchFrameRate = DEFAULT_WATCH_FRAME_RATE;
+
+    private static int healthCheckInterval = DEFAULT_HEALTH_CHECK_INTERVAL;
+
+    private static int healthCheckConcurrency = DEFAULT_HEALTH_CHECK_CONCURRENCY;
+
+    private static int healthCheckBatchSize = DEFAULT_HEALTH_CHECK_BATCH_SIZE;
+
+    private static int healthCheckFailureThreshold = DEFAULT_HEALTH_CHECK_FAILURE_THRESHOLD;
+
+    private static boolean autoHeal = false;
+
+    private static int healBackoff = DEFAULT_HEAL_BACKOFF;
+
+    private static boolean reloadOnChange = false;
+
+    private static int teardownParallelism = DEFAULT_TEARDOWN_PARALLELISM;
+
+    private static int stopTimeout = DEFAULT_STOP_TIMEOUT;
+
+    private static boolean killOnShutdown = false;
+
+    private static int drainDelay = 0;
+
+    private static Map<String, String> dockerEndpoints = Collections.emptyMap();
+
+    private static String placementStrategy = DEFAULT_PLACEMENT_STRATEGY;
+
+    private static boolean prePullImages = true;
+
+    private static int pullParallelism = DEFAULT_PULL_PARALLELISM;
+
+    private static boolean skipPresentImages = true;
+
+    private static int autoscaleInterval = DEFAULT_AUTOSCALE_INTERVAL;
+
+    private static int scaleUpCooldown = DEFAULT_SCALE_UP_COOLDOWN;
+
+    private static int scaleDownCooldown = DEFAULT_SCALE_DOWN_COOLDOWN;
+
+    public static synchronized int getStartupPoolSize() {
+        return startupPoolSize;
+    }
+
+    public static synchronized void setStartupPoolSize(int startupPoolSize) {
+        if (startupPoolSize < 1) {
+            throw new IllegalArgumentException("Startup pool size must be at least 1, got " + startupPoolSize);
+        }
+        DeployerSettings.startupPoolSize = startupPoolSize;
+    }
+
+    public static synchronized int getScalingParallelism() {
+        return scalingParallelism;
+    }
+
+    public static synchronized void setScalingParallelism(int scalingParallelism) {
+        if (scalingParallelism < 1) {
+            throw new IllegalArgumentException("Scaling parallelism must be at least 1, got " + scalingParallelism);
+        }
+        DeployerSettings.scalingParallelism = scalingParallelism;
+    }
+
+    public static synchronized int getMaxReplicas() {
+        return maxReplicas;
+    }
+
+    public static synchronized void setMaxReplicas(int maxReplicas) {
+        if (maxReplicas < 1) {
+            throw new IllegalArgumentException("Max replicas must be at least 1, got " + maxReplicas);
+        }
+        DeployerSettings.maxReplicas = maxReplicas;
+    }
+
+    /**
+     * Returns the number of standby containers to keep for the given service. 0 disables the warm pool.
+     */
+    public static synchronized int getWarmPoolSize(String svcName) {
+        return warmPoolSizes.getOrDefault(svcName, warmPoolSize);
+    }
+
+    public static synchronized void setWarmPoolSize(int warmPoolSize) {
+        if (warmPoolSize < 0) {
+            throw new IllegalArgumentException("Warm pool size cannot be negative, got " + warmPoolSize);
+        }
+        DeployerSettings.warmPoolSize = warmPoolSize;
+    }
+
+    public static synchronized void setWarmPoolSizes(Map<String, Integer> warmPoolSizes) {
+        warmPoolSizes.forEach((svc, size) -> {
+            if (size < 0) {
+                throw new IllegalArgumentException("Warm pool size of " + svc + " cannot be negative, got " + size);
+            }
+        });
+        DeployerSettings.warmPoolSizes = Collections.unmodifiableMap(new HashMap<>(warmPoolSizes));
+    }
+
+    public static synchronized boolean isEvictWarmPoolOnShutdown() {
+        return evictWarmPoolOnShutdown;
+    }
+
+    public static synchronized void setEvictWarmPoolOnShutdown(boolean evictWarmPoolOnShutdown) {
+        DeployerSettings.evictWarmPoolOnShutdown = evictWarmPoolOnShutdown;
+    }
+
+    public static synchronized Path getSessionFile() {
+        return sessionFile;
+    }
+
+    public static synchronized void setSessionFile(Path sessionFile) {
+        DeployerSettings.sessionFile = sessionFile;
+    }
+
+    /**
+     * Whether the shell should attach to the containers of the previous session instead of starting new ones.
+     */
+    public static synchronized boolean isAttach() {
+        return attach;
+    }
+
+    public static synchronized void setAttach(boolean attach) {
+        DeployerSettings.attach = attach;
+    }
+
+    /**
+     * Whether start should adopt the still running containers of unchanged services from the previous session.
+     */
+    public static synchronized boolean isReuseContainers() {
+        return reuseContainers;
+    }
+
+    public static synchronized void setReuseContainers(boolean reuseContainers) {
+        DeployerSettings.reuseContainers = reuseContainers;
+    }
+
+    public static synchronized Path getMetricsDirectory() {
+        return metricsDirectory;
+    }
+
+    public static synchronized void setMetricsDirectory(Path metricsDirectory) {
+        DeployerSettings.metricsDirectory = metricsDirectory;
+    }
+
+    public static synchronized int getWatchFrameRate() {
+        return watchFrameRate;
+    }
+
+    public static synchronized void setWatchFrameRate(int watchFrameRate) {
+        if (watchFrameRate < 1) {
+            throw new IllegalArgumentException("Watch frame rate must be at least 1, got " + watchFrameRate);
+        }
+        DeployerSettings.watchFrameRate = watchFrameRate;
+    }
+
+    /**
+     * @return the seconds between two health checks, 0 if the health monitor is disabled
+     */
+    public static synchronized int getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    public static synchronized void setHealthCheckInterval(int healthCheckInterval) {
+        if (healthCheckInterval < 0) {
+            throw new IllegalArgumentException("Health check interval cannot be negative, got " + healthCheckInterval);
+        }
+        DeployerSettings.healthCheckInterval = healthCheckInterval;
+    }
+
+    public static synchronized int getHealthCheckConcurrency() {
+        return healthCheckConcurrency;
+    }
+
+    public static synchronized void setHealthCheckConcurrency(int healthCheckConcurrency) {
+        if (healthCheckConcurrency < 1) {
+            throw new IllegalArgumentException("Health check concurrency must be at least 1, got " + healthCheckConcurrency);
+        }
+        DeployerSettings.healthCheckConcurrency = healthCheckConcurrency;
+    }
+
+    public static synchronized int getHealthCheckBatchSize() {
+        return healthCheckBatchSize;
+    }
+
+    public static synchronized void setHealthCheckBatchSize(int healthCheckBatchSize) {
+        if (healthCheckBatchSize < 1) {
+            throw new IllegalArgumentException("Health check batch size must be at least 1, got " + healthCheckBatchSize);
+        }
+        DeployerSettings.healthCheckBatchSize = healthCheckBatchSize;
+    }
+
+    public static synchronized int getHealthCheckFailureThreshold() {
+        return healthCheckFailureThreshold;
+    }
+
+    public static synchronized void setHealthCheckFailureThreshold(int healthCheckFailureThreshold) {
+        if (healthCheckFailureThreshold < 1) {
+            throw new IllegalArgumentException("Health check failure threshold must be at least 1, got "
+                    + healthCheckFailureThreshold);
+        }
+        DeployerSettings.healthCheckFailureThreshold = healthCheckFailureThreshold;
+    }
+
+    public static synchronized boolean isAutoHeal() {
+        return autoHeal;
+    }
+
+    public static synchronized void setAutoHeal(boolean autoHeal) {
+        DeployerSettings.autoHeal = autoHeal;
+    }
+
+    /**
+     * @return the seconds to wait before retrying to replace the failed instances of a service
+     */
+    public static synchronized int getHealBackoff() {
+        return healBackoff;
+    }
+
+    public static synchronized void setHealBackoff(int healBackoff) {
+        if (healBackoff < 1) {
+            throw new IllegalArgumentException("Heal backoff must be at least 1, got " + healBackoff);
+        }
+        DeployerSettings.healBackoff = healBackoff;
+    }
+
+    public static synchronized boolean isReloadOnChange() {
+        return reloadOnChange;
+    }
+
+    public static synchronized void setReloadOnChange(boolean reloadOnChange) {
+        DeployerSettings.reloadOnChange = reloadOnChange;
+    }
+
+    public static synchronized int getTeardownParallelism() {
+        return teardownParallelism;
+    }
+
+    public static synchronized void setTeardownParallelism(int teardownParallelism) {
+        if (teardownParallelism < 1) {
+            throw new IllegalArgumentException("Teardown parallelism must be at least 1, got " + teardownParallelism);
+        }
+        DeployerSettings.teardownParallelism = teardownParallelism;
+    }
+
+    /**
+     * @return the seconds a container is given to exit once stopped, before it is killed
+     */
+    public static synchronized int getStopTimeout() {
+        return stopTimeout;
+    }
+
+    public static synchronized void setStopTimeout(int stopTimeout) {
+        if (stopTimeout < 0) {
+            throw new IllegalArgumentException("Stop timeout cannot be negative, got " + stopTimeout);
+        }
+        DeployerSettings.stopTimeout = stopTimeout;
+    }
+
+    public static synchronized boolean isKillOnShutdown() {
+        return killOnShutdown;
+    }
+
+    public static synchronized void setKillOnShutdown(boolean killOnShutdown) {
+        DeployerSettings.killOnShutdown = killOnShutdown;
+    }
+
+    /**
+     * @return the seconds to wait between the deregistration of a priority wave and the removal of its containers
+     */
+    public static synchronized int getDrainDelay() {
+        return drainDelay;
+    }
+
+    public static synchronized void setDrainDelay(int drainDelay) {
+        if (drainDelay < 0) {
+            throw new IllegalArgumentException("Drain delay cannot be negative, got " + drainDelay);
+        }
+        DeployerSettings.drainDelay = drainDelay;
+    }
+
+    /**
+     * @return the Docker hosts (e.g. tcp://10.0.0.2:2375) containers are placed on besides the local daemon, by name
+     */
+    public static synchronized Map<String, String> getDockerEndpoints() {
+        return dockerEndpoints;
+    }
+
+    public static synchronized void setDockerEndpoints(Map<String, String> dockerEndpoints) {
+        DeployerSettings.dockerEndpoints = Collections.unmodifiableMap(new LinkedHashMap<>(dockerEndpoints));
+    }
+
+    public static synchronized String getPlacementStrategy() {
+        return placementStrategy;
+    }
+
+    public static synchronized void setPlacementStrategy(String placementStrategy) {
+        DeployerSettings.placementStrategy = placementStrategy;
+    }
+
+    public static synchronized boolean isPrePullImages() {
+        return prePullImages;
+    }
+
+    public static synchronized void setPrePullImages(boolean prePullImages) {
+        DeployerSettings.prePullImages = prePullImages;
+    }
+
+    public static synchronized int getPullParallelism() {
+        return pullParallelism;
+    }
+
+    public static synchronized void setPullParallelism(int pullParallelism) {
+        if (pullParallelism < 1) {
+            throw new IllegalArgumentException("Pull parallelism must be at least 1, got " + pullParallelism);
+        }
+        DeployerSettings.pullParallelism = pullParallelism;
+    }
+
+    public static synchronized boolean isSkipPresentImages() {
+        return skipPresentImages;
+    }
+
+    public static synchronized void setSkipPresentImages(boolean skipPresentImages) {
+        DeployerSettings.skipPresentImages = skipPresentImages;
+    }
+
+    /**
+     * @return the seconds between two evaluations of the autoscale policies, 0 disables the autoscaler
+     */
+    public static synchronized int getAutoscaleInterval() {
+        return autoscaleInterval;
+    }
+
+    public static synchronized void setAutoscaleInterval(int autoscaleInterval) {
+        if (autoscaleInterval < 0) {
+            throw new IllegalArgumentException("Autoscale interval cannot be negative, got " + autoscaleInterval);
+        }
+        DeployerSettings.autoscaleInterval = autoscaleInterval;
+    }
+
+    public static synchronized int getScaleUpCooldown() {
+        return scaleUpCooldown;
+    }
+
+    public static synchronized void setScaleUpCooldown(int scaleUpCooldown) {
+        if (scaleUpCooldown < 0) {
+            throw new IllegalArgumentException("Scale up cooldown cannot be negative, got " + scaleUpCooldown);
+        }
+        DeployerSettings.scaleUpCooldown = scaleUpCooldown;
+    }
+
+    public static synchronized int getScaleDownCooldown() {
+        return scaleDownCooldown;
+    }
+
+    public static synchronized void setScaleDownCooldown(int scaleDownCooldown) {
+        if (scaleDownCooldown < 0) {
+            throw new IllegalArgumentException("Scale down cooldown cannot be negative, got " + scaleDownCooldown);
+        }
+        DeployerSettings.scaleDownCooldown = scaleDownCooldown;
+    }
+
+}
@@ -0,0 +1,55 @@
+package com.github.dockerunit.deployer;
+
+import com.github.dockerunit.core.internal.ServiceDescriptor;
+import com.github.dockerunit.deployer.util.Descriptors;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The differences between two versions of the descriptors of a stack, by service name.
+ * A service whose descriptors only differ in the number of replicas is rescaled rather than changed,
+ * so that its running containers can be kept.
+ */
+@Value
+public class DescriptorDiff {
+
+    List<ServiceDescriptor> added;
+    List<ServiceDescriptor> removed;
+    List<ServiceDescriptor> changed;
+    List<ServiceDescriptor> rescaled;
+
+    public static DescriptorDiff of(List<ServiceDescriptor> before, List<ServiceDescriptor> after) {
+        Map<String, ServiceDescriptor> previous = new LinkedHashMap<>();
+        before.forEach(sd -> previous.put(Descriptors.serviceName(sd), sd));
+
+        List<ServiceDescriptor> added = new ArrayList<>();
+        List<ServiceDescriptor> changed = new ArrayList<>();
+        List<ServiceDescriptor> rescaled = new ArrayList<>();
+        for (ServiceDescriptor sd : after) {
+            ServiceDescriptor old = previous.remove(Descriptors.serviceName(sd));
+            if (old == null) {
+                added.add(sd);
+            } else if (!Descriptors.fingerprint(old).equals(Descriptors.fingerprint(sd))) {
+                if (singleReplica(old).equals(singleReplica(sd))) {
+                    rescaled.add(sd);
+                } else {
+                    changed.add(sd);
+                }
+            }
+        }
+        return new DescriptorDiff(added, new ArrayList<>(previous.values()), changed, rescaled);
+    }
+
+    private static String singleReplica(ServiceDescriptor sd) {
+        return Descriptors.fingerprint(ServiceScaler.buildDeltaDescriptor(sd, 1, false));
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && removed.isEmpty() && changed.isEmpty() && rescaled.isEmpty();
+    }
+
+}
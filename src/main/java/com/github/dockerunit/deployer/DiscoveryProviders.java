@@ -0,0 +1,32 @@
+package com.github.dockerunit.deployer;
+
+import com.github.dockerunit.core.discovery.DiscoveryProvider;
+import com.github.dockerunit.core.discovery.DiscoveryProviderFactory;
+
+import java.util.ServiceLoader;
+import java.util.logging.Logger;
+import java.util.stream.StreamSupport;
+
+public class DiscoveryProviders {
+
+    private static final Logger logger = Logger.getLogger(DiscoveryProviders.class.getSimpleName());
+
+    /**
+     * Loads the first {@link DiscoveryProviderFactory} available on the classpath and returns its provider.
+     */
+    public static DiscoveryProvider load() {
+        ServiceLoader<DiscoveryProviderFactory> loader = ServiceLoader.load(DiscoveryProviderFactory.class);
+
+        return StreamSupport.stream(loader.spliterator(), false)
+                .peek(impl -> logger.info(
+                        "Found discovery provider factory of type " + impl.getClass().getSimpleName()))
+                .findFirst()
+                .map(impl -> {
+                    logger.info("Using discovery provider factory " + impl.getClass().getSimpleName());
+                    return impl;
+                })
+                .map(DiscoveryProviderFactory::getProvider)
+                .orElseThrow(() -> new RuntimeException("No discovery provider factory found. Aborting."));
+    }
+
+}
@@ -5,51 +5,234 @@ import com.github.dockerunit.core.ServiceContext;
 import com.github.dockerunit.core.ServiceInstance;
 import com.github.dockerunit.core.discovery.DiscoveryProvider;
 import com.github.dockerunit.core.internal.ServiceContextBuilder;
+import com.github.dockerunit.core.internal.ServiceDescriptor;
 import com.github.dockerunit.core.internal.UsageDescriptor;
 import com.github.dockerunit.core.internal.service.DefaultServiceContext;
+import com.github.dockerunit.deployer.metrics.MetricsRegistry;
+import com.github.dockerunit.deployer.util.Descriptors;
+import com.github.dockerunit.deployer.util.Futures;
+import com.github.dockerunit.deployer.util.PriorityWaves;
+import com.github.dockerunit.deployer.util.ServiceContexts;
+import com.github.dockerunit.deployer.util.ThreadFactories;
 import lombok.RequiredArgsConstructor;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 @RequiredArgsConstructor
 public class DockerUnitSetup {
 
     private static final Logger logger = Logger.getLogger(DockerUnitSetup.class.getSimpleName());
 
+    private static final long DRAIN_TIMEOUT_SECONDS = 120;
+
     private final ServiceContextBuilder contextBuilder;
     private final DiscoveryProvider discoveryProvider;
+    private final int poolSize;
+    private final ContainerReuseCache reuseCache;
+
+    private BooleanSupplier cancellation = () -> false;
+    private Consumer<ServiceContext> listener = ctx -> {};
+
+    public DockerUnitSetup(ServiceContextBuilder contextBuilder, DiscoveryProvider discoveryProvider) {
+        this(contextBuilder, discoveryProvider, null);
+    }
+
+    public DockerUnitSetup(ServiceContextBuilder contextBuilder, DiscoveryProvider discoveryProvider,
+                           ContainerReuseCache reuseCache) {
+        this(contextBuilder, discoveryProvider, DeployerSettings.getStartupPoolSize(), reuseCache);
+    }
 
+    /**
+     * Makes the setup stop creating containers as soon as the given condition holds. Containers being created are
+     * completed, and their discovery is skipped as after a failure.
+     */
+    public DockerUnitSetup withCancellation(BooleanSupplier cancellation) {
+        this.cancellation = cancellation;
+        return this;
+    }
+
+    /**
+     * Notifies the listener with the context of every service as soon as it has been processed by the pipeline.
+     */
+    public DockerUnitSetup withListener(Consumer<ServiceContext> listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Starts the services in a two-stage pipeline.
+     * Stage 1 creates the containers one priority wave at the time, with the services of a wave created concurrently.
+     * As soon as a service is started, its context is handed over to stage 2 through a bounded queue,
+     * where discovery is performed while stage 1 keeps creating the following containers.
+     * As in Dockerunit itself, priorities only define the order in which containers are started.
+     * When a reuse cache is available, still running containers of unchanged services are adopted instead of created.
+     */
     public ServiceContext setup(UsageDescriptor descriptor) {
-        // Create containers and perform discovery one svc at the time
+        return setup(descriptor.getUsages());
+    }
+
+    public ServiceContext setup(List<ServiceDescriptor> usages) {
         final AtomicBoolean failureOccured = new AtomicBoolean(false);
-        List<ServiceContext> serviceContexts = descriptor.getUsages().stream()
-                .map(contextBuilder::buildServiceContext)
-                .map(ctx -> {
-                    if (!ctx.checkStatus(ServiceInstance.Status.STARTED)) {
+        List<List<ServiceDescriptor>> waves = PriorityWaves.group(usages, ServiceDescriptor::getPriority);
+        int servicesCount = waves.stream().mapToInt(List::size).sum();
+
+        // The contexts that have been built but not handed to the listener yet
+        Set<ServiceContext> unpublished = ConcurrentHashMap.newKeySet();
+        BlockingQueue<ServiceContext> startedContexts = new ArrayBlockingQueue<>(poolSize);
+        ExecutorService buildExecutor = Executors.newFixedThreadPool(poolSize, ThreadFactories.named("dude-build"));
+        ExecutorService discoveryExecutor = Executors.newFixedThreadPool(poolSize, ThreadFactories.named("dude-discovery"));
+        try {
+            List<Future<ServiceContext>> serviceContexts = IntStream.range(0, servicesCount)
+                    .mapToObj(i -> discoveryExecutor.submit(
+                            () -> discoverService(startedContexts.take(), failureOccured, unpublished)))
+                    .collect(Collectors.toList());
+
+            for (List<ServiceDescriptor> wave : waves) {
+                buildWave(wave, buildExecutor, startedContexts, failureOccured, unpublished);
+            }
+
+            List<ServiceContext> result = new ArrayList<>();
+            for (Future<ServiceContext> serviceContext : serviceContexts) {
+                ServiceContext ctx = Futures.await(serviceContext);
+                if (!isSkipped(ctx)) {
+                    result.add(ctx);
+                }
+            }
+            return MetricsRegistry.time(MetricsRegistry.CONTEXT_MERGE, null, () -> ServiceContexts.mergeAll(result));
+        } finally {
+            buildExecutor.shutdownNow();
+            discoveryExecutor.shutdownNow();
+            publishUnpublished(buildExecutor, discoveryExecutor, unpublished);
+        }
+    }
+
+    /**
+     * Hands the contexts that have been built but not discovered over to the listener, as aborted, once the
+     * builds in progress have completed, so that a setup that fails or is interrupted leaves every container tracked.
+     */
+    private void publishUnpublished(ExecutorService buildExecutor, ExecutorService discoveryExecutor,
+                                    Set<ServiceContext> unpublished) {
+        // The interrupt that may have stopped the setup must not stop the wait as well
+        boolean interrupted = Thread.interrupted();
+        try {
+            buildExecutor.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            discoveryExecutor.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        for (ServiceContext ctx : new ArrayList<>(unpublished)) {
+            if (unpublished.remove(ctx)) {
+                listener.accept(abortService(ctx));
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void buildWave(List<ServiceDescriptor> wave, ExecutorService executor,
+                           BlockingQueue<ServiceContext> startedContexts, AtomicBoolean failureOccured,
+                           Set<ServiceContext> unpublished) {
+        List<Future<?>> builds = wave.stream()
+                .map(sd -> executor.submit(() -> {
+                    if (cancellation.getAsBoolean()) {
                         failureOccured.set(true);
+                        startedContexts.put(skip(sd));
+                        return null;
                     }
-                    return ctx;
-                }).map(ctx -> {
-                    if (failureOccured.get()) {
-                        logger.info(
-                                "Skipping discovery of svc " + getServiceName(ctx) + " due to a previous failure.");
-                        return abortService(ctx);
-                    }
-
-                    logger.info("Performing discovery for svc " + getServiceName(ctx));
-                    ServiceContext postDiscoveryCtx = discoveryProvider.populateRegistry(ctx);
-                    if (!postDiscoveryCtx.checkStatus(ServiceInstance.Status.DISCOVERED)) {
+                    ServiceContext ctx = build(sd);
+                    if (!ctx.checkStatus(ServiceInstance.Status.STARTED)) {
                         failureOccured.set(true);
                     }
-                    return postDiscoveryCtx;
-                }).collect(Collectors.toList());
+                    unpublished.add(ctx);
+                    startedContexts.put(ctx);
+                    return null;
+                }))
+                .collect(Collectors.toList());
+        for (Future<?> build : builds) {
+            Futures.await(build);
+        }
+    }
 
-        ServiceContext completeContext = mergeContexts(serviceContexts);
-        return completeContext;
+    /**
+     * Builds the containers of the service. A build that throws is turned into an aborted context, so that the
+     * services of the same wave still go through the pipeline.
+     */
+    private ServiceContext build(ServiceDescriptor sd) {
+        try {
+            ServiceContext ctx = reuseCache == null ? null : reuseCache.adopt(sd);
+            if (ctx == null) {
+                long start = System.nanoTime();
+                ctx = contextBuilder.buildServiceContext(sd);
+                MetricsRegistry.recordStartup(MetricsRegistry.CONTAINER_BUILD, getServiceName(ctx), start);
+            }
+            return ctx;
+        } catch (RuntimeException e) {
+            String svcName = Descriptors.serviceName(sd);
+            logger.warning("Could not create the containers of svc " + svcName + ": " + e.getMessage());
+            Set<ServiceInstance> instances = new HashSet<>();
+            instances.add(ServiceInstance.builder()
+                    .status(ServiceInstance.Status.ABORTED)
+                    .statusDetails("Could not create the containers: " + e.getMessage())
+                    .build());
+            Set<Service> services = new HashSet<>();
+            services.add(new Service(svcName, instances, sd));
+            return new DefaultServiceContext(services);
+        }
+    }
+
+    private ServiceContext discoverService(ServiceContext ctx, AtomicBoolean failureOccured,
+                                           Set<ServiceContext> unpublished) {
+        ServiceContext postDiscoveryCtx = performDiscovery(ctx, failureOccured);
+        // Skipped services have no containers, and are not tracked as unpublished
+        if (unpublished.remove(ctx) && !isSkipped(postDiscoveryCtx)) {
+            listener.accept(postDiscoveryCtx);
+        }
+        return postDiscoveryCtx;
+    }
+
+    private ServiceContext performDiscovery(ServiceContext ctx, AtomicBoolean failureOccured) {
+        if (failureOccured.get() || cancellation.getAsBoolean()) {
+            logger.info("Skipping discovery of svc " + getServiceName(ctx) + " due to a previous failure or cancellation.");
+            return abortService(ctx);
+        }
+
+        logger.info("Performing discovery for svc " + getServiceName(ctx));
+        ServiceContext postDiscoveryCtx = MetricsRegistry.timeStartup(MetricsRegistry.DISCOVERY, getServiceName(ctx),
+                () -> discoveryProvider.populateRegistry(ctx));
+        if (!postDiscoveryCtx.checkStatus(ServiceInstance.Status.DISCOVERED)) {
+            failureOccured.set(true);
+        }
+        return postDiscoveryCtx;
+    }
+
+    /**
+     * A placeholder for a service whose containers have not been created because the setup has been cancelled.
+     */
+    private static ServiceContext skip(ServiceDescriptor sd) {
+        Set<Service> services = new HashSet<>();
+        services.add(new Service(Descriptors.serviceName(sd), new HashSet<>(), sd));
+        return new DefaultServiceContext(services);
+    }
+
+    private static boolean isSkipped(ServiceContext ctx) {
+        return ctx.getServices().stream().allMatch(svc -> svc.getInstances().isEmpty());
     }
 
     private String getServiceName(ServiceContext ctx) {
@@ -73,15 +256,4 @@ public class DockerUnitSetup {
                 .withStatusDetails(statusDetails);
     }
 
-    private ServiceContext mergeContexts(List<ServiceContext> serviceContexts) {
-        ServiceContext completeContext = null;
-        if (!serviceContexts.isEmpty()) {
-            completeContext = serviceContexts.remove(0);
-        }
-        for (ServiceContext serviceContext : serviceContexts) {
-            completeContext = completeContext.merge(serviceContext);
-        }
-        return completeContext;
-    }
-
 }
@@ -0,0 +1,202 @@
+package com.github.dockerunit.deployer;
+
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceContext;
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.core.discovery.DiscoveryProvider;
+import com.github.dockerunit.core.internal.ServiceContextBuilder;
+import com.github.dockerunit.core.internal.ServiceContextBuilderFactory;
+import com.github.dockerunit.core.internal.ServiceDescriptor;
+import com.github.dockerunit.core.internal.UsageDescriptor;
+import com.github.dockerunit.core.internal.reflect.DependencyDescriptorBuilderFactory;
+import com.github.dockerunit.core.internal.reflect.UsageDescriptorBuilder;
+import com.github.dockerunit.core.internal.service.DefaultServiceContext;
+import com.github.dockerunit.deployer.docker.ImagePuller;
+import com.github.dockerunit.deployer.metrics.MetricsExporter;
+import com.github.dockerunit.deployer.metrics.MetricsRegistry;
+import com.github.dockerunit.deployer.placement.PlacementScheduler;
+import com.github.dockerunit.deployer.placement.PlacingContextBuilder;
+import com.github.dockerunit.deployer.util.Descriptors;
+import com.github.dockerunit.deployer.util.ThreadFactories;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Starts and stops the services without the shell, handing the running containers over
+ * between separate Maven goals through the session file.
+ */
+public class HeadlessDeployer {
+
+    private static final Logger logger = Logger.getLogger(HeadlessDeployer.class.getSimpleName());
+
+    private static final long STARTUP_DRAIN_TIMEOUT_MINUTES = 3;
+
+    private final ServiceContextBuilder contextBuilder = new PlacingContextBuilder();
+    private final UsageDescriptorBuilder descriptorBuilder = DependencyDescriptorBuilderFactory.create();
+    private final DiscoveryProvider discoveryProvider = DiscoveryProviders.load();
+    private final SessionStore sessionStore = new SessionStore(DeployerSettings.getSessionFile());
+
+    public HeadlessDeployer() {
+        PlacementScheduler.configure(ServiceContextBuilderFactory.create());
+    }
+
+    /**
+     * Starts the discovery provider and the services, waiting until every instance has been discovered.
+     * On failure or timeout, everything that has been created is torn down.
+     */
+    public ServiceContext start(long timeout, TimeUnit unit) throws TimeoutException {
+        ExecutorService executor = Executors.newSingleThreadExecutor(ThreadFactories.named("dude-headless"));
+        Future<ServiceContext> startup = executor.submit(() -> {
+            Thread.currentThread().setContextClassLoader(SvcClassLoadingManager.getClassLoader());
+            // The services of every stack go through a single pipeline
+            List<ServiceDescriptor> usages = StackRegistry.allUsages(descriptorBuilder);
+            if (DeployerSettings.isPrePullImages()) {
+                prePullImages(usages);
+            }
+            startDiscovery();
+            // Every service is recorded as soon as it has been processed, so that stop finds the containers
+            // created before a failure or a timeout
+            ServiceContext svcContext = MetricsRegistry.time(MetricsRegistry.SETUP, null,
+                    () -> new DockerUnitSetup(contextBuilder, discoveryProvider)
+                            .withListener(ctx -> {
+                                ServiceContextProvider.updateSvcRegistry(current -> current.merge(ctx));
+                                sessionStore.save(ServiceContextProvider.getSnapshot());
+                            })
+                            .setup(usages));
+            ServiceContextProvider.updateSvcRegistry(current -> current.merge(svcContext));
+            sessionStore.save(ServiceContextProvider.getSnapshot());
+            MetricsExporter.dump(DeployerSettings.getMetricsDirectory());
+            return svcContext;
+        });
+
+        try {
+            ServiceContext svcContext = startup.get(timeout, unit);
+            if (!svcContext.checkStatus(ServiceInstance.Status.DISCOVERED)) {
+                stop();
+                throw new IllegalStateException(svcContext.getFormattedErrors());
+            }
+            return svcContext;
+        } catch (TimeoutException e) {
+            logger.warning("Services did not become ready in time, tearing down.");
+            abort(startup, executor);
+            stop();
+            throw e;
+        } catch (InterruptedException e) {
+            abort(startup, executor);
+            stop();
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while starting services.", e);
+        } catch (ExecutionException e) {
+            stop();
+            throw new IllegalStateException("Could not start services.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Interrupts the startup and waits for it to record the containers it has created so far.
+     */
+    private void abort(Future<ServiceContext> startup, ExecutorService executor) {
+        startup.cancel(true);
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(STARTUP_DRAIN_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                logger.warning("Startup did not stop in time, containers being created may be left behind.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops the services and the discovery provider recorded in the session file.
+     */
+    public void stop() {
+        Thread.currentThread().setContextClassLoader(SvcClassLoadingManager.getClassLoader());
+        Optional<SessionStore.Session> session = sessionStore.load();
+        if (!session.isPresent()) {
+            logger.info("No running session found in " + sessionStore.getFile());
+            return;
+        }
+
+        ServiceContext svcContext = toContext(session.get().getServices(), priorityDescriptors());
+        List<ContainerTeardown.Failure> failures = new ArrayList<>(new ContainerTeardown(discoveryProvider)
+                .tearDown(svcContext, new DefaultServiceContext(new HashSet<>()))
+                .getFailures());
+        failures.addAll(new ContainerTeardown(null, true)
+                .tearDown(session.get().toStandbyContext(), null)
+                .getFailures());
+        failures.addAll(new ContainerTeardown(null)
+                .tearDown(toContext(session.get().getDiscoveryServices(), Collections.emptyMap()), null)
+                .getFailures());
+        if (!failures.isEmpty()) {
+            // The session is kept, so that stop can be run again
+            throw new IllegalStateException(failures.size() + " containers could not be removed:\n"
+                    + new ContainerTeardown.Result(Collections.emptyList(), failures).failureTable().render(120));
+        }
+        sessionStore.delete();
+        ServiceContextProvider.setSvcContext(null);
+        ServiceContextProvider.setDiscoveryContext(null);
+    }
+
+    private void prePullImages(List<ServiceDescriptor> usages) {
+        UsageDescriptor discoveryProviderDescriptor = descriptorBuilder.buildDescriptor(discoveryProvider.getDiscoveryConfig());
+        List<String> images = Stream.concat(usages.stream(), discoveryProviderDescriptor.getUsages().stream())
+                .map(Descriptors::image)
+                .distinct()
+                .collect(Collectors.toList());
+        new ImagePuller().pull(images, logger::info, () -> Thread.currentThread().isInterrupted());
+    }
+
+    private void startDiscovery() {
+        UsageDescriptor discoveryProviderDescriptor = descriptorBuilder.buildDescriptor(discoveryProvider.getDiscoveryConfig());
+
+        ServiceContext discoveryContext = MetricsRegistry.time(MetricsRegistry.DISCOVERY_PROVIDER_BOOT, null,
+                () -> contextBuilder.buildContext(discoveryProviderDescriptor));
+        ServiceContextProvider.setDiscoveryContext(discoveryContext);
+        sessionStore.save(ServiceContextProvider.getSnapshot());
+        if (!discoveryContext.checkStatus(ServiceInstance.Status.STARTED)) {
+            throw new RuntimeException(discoveryContext.getFormattedErrors());
+        }
+    }
+
+    /**
+     * Builds the descriptors of the services, which are only needed to stop them in reverse priority order.
+     * If the classes have changed so much that they cannot be loaded anymore, every service is stopped at once.
+     */
+    private Map<String, ServiceDescriptor> priorityDescriptors() {
+        try {
+            return StackRegistry.allUsages(descriptorBuilder)
+                    .stream()
+                    .collect(Collectors.toMap(Descriptors::serviceName, sd -> sd, (sd1, sd2) -> sd1));
+        } catch (RuntimeException e) {
+            logger.warning("Could not build the service descriptors, stopping services regardless of their priority: "
+                    + e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    // Containers are cleared by id, so the descriptors are only used for their priority
+    private ServiceContext toContext(Map<String, List<ServiceInstance>> instances, Map<String, ServiceDescriptor> descriptors) {
+        Set<Service> services = new HashSet<>();
+        instances.forEach((name, list) -> services.add(new Service(name, new HashSet<>(list), descriptors.get(name))));
+        return new DefaultServiceContext(services);
+    }
+
+}
@@ -0,0 +1,322 @@
+package com.github.dockerunit.deployer;
+
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.core.discovery.DiscoveryProvider;
+import com.github.dockerunit.core.internal.ServiceContextBuilder;
+import com.github.dockerunit.deployer.docker.DockerClients;
+import com.github.dockerunit.deployer.util.Futures;
+import com.github.dockerunit.deployer.util.ThreadFactories;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Periodically checks that the containers of the tracked instances are still running.
+ * Containers are checked in batches, with a single Docker call per batch, on a small pool.
+ * An instance that fails {@code healthCheckFailureThreshold} consecutive checks is marked as ABORTED and,
+ * when auto-heal is enabled, deregistered, removed and replaced by a new replica.
+ * Removals and replacements run as jobs of the {@link JobQueue}, so they never overlap with the other jobs on the
+ * service. Replacements that cannot be discovered are retried with an exponential backoff.
+ */
+@RequiredArgsConstructor
+public class HealthMonitor {
+
+    private static final Logger logger = Logger.getLogger(HealthMonitor.class.getSimpleName());
+
+    private static final int MAX_BACKOFF_FACTOR = 32;
+
+    private final ServiceContextBuilder contextBuilder;
+    private final DiscoveryProvider discoveryProvider;
+    private final WarmPool warmPool;
+    private final JobQueue jobQueue;
+
+    // Only accessed by the monitor thread
+    private final Map<String, Integer> failures = new HashMap<>();
+    private final Map<String, Job> jobs = new HashMap<>();
+    private int checkErrors = 0;
+
+    // Updated by the jobs as well
+    private final Map<String, Integer> missingReplicas = new ConcurrentHashMap<>();
+    private final Map<String, Integer> healAttempts = new ConcurrentHashMap<>();
+    private final Map<String, Long> nextHealAt = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+    private ExecutorService checkers;
+    private volatile Runnable onChange;
+
+    /**
+     * Starts checking the instances every {@code healthCheckInterval} seconds, unless the monitor is disabled.
+     *
+     * @param onChange notified on the monitor thread every time instances have been marked, and on the job thread
+     *                 every time they have been removed or replaced
+     */
+    public synchronized void start(Runnable onChange) {
+        if (scheduler != null || DeployerSettings.getHealthCheckInterval() <= 0) {
+            return;
+        }
+        this.onChange = onChange;
+        failures.clear();
+        jobs.clear();
+        missingReplicas.clear();
+        healAttempts.clear();
+        nextHealAt.clear();
+        checkErrors = 0;
+        ScheduledThreadPoolExecutor monitor = new ScheduledThreadPoolExecutor(1, ThreadFactories.named("dude-health-monitor"));
+        // The next check is dropped on stop, while the one in progress completes
+        monitor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        scheduler = monitor;
+        checkers = Executors.newFixedThreadPool(DeployerSettings.getHealthCheckConcurrency(),
+                ThreadFactories.named("dude-health-check"));
+        schedule(DeployerSettings.getHealthCheckInterval());
+    }
+
+    /**
+     * Stops the monitor, waiting for a check in progress to complete, so that no job is submitted once it returns.
+     * Removals and replacements that have been submitted are left to the queue.
+     */
+    public void stop() {
+        ScheduledExecutorService stopped;
+        ExecutorService stoppedCheckers;
+        synchronized (this) {
+            if (scheduler == null) {
+                return;
+            }
+            stopped = scheduler;
+            stoppedCheckers = checkers;
+            stopped.shutdown();
+            scheduler = null;
+        }
+        try {
+            if (!stopped.awaitTermination(DeployerSettings.getHealthCheckInterval(), TimeUnit.SECONDS)) {
+                logger.warning("The health check in progress did not complete in time.");
+                stopped.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stoppedCheckers.shutdown();
+            synchronized (this) {
+                if (checkers == stoppedCheckers) {
+                    checkers = null;
+                }
+            }
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return scheduler != null;
+    }
+
+    private synchronized void schedule(long delaySeconds) {
+        if (scheduler == null) {
+            return;
+        }
+        try {
+            scheduler.schedule(this::run, delaySeconds, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            // The monitor is being stopped
+        }
+    }
+
+    private void run() {
+        ExecutorService executor;
+        synchronized (this) {
+            executor = checkers;
+        }
+        if (executor == null) {
+            return;
+        }
+        int interval = DeployerSettings.getHealthCheckInterval();
+        long delay = interval;
+        try {
+            jobs.values().removeIf(job -> job.getState().isFinished());
+            if (check(executor)) {
+                onChange.run();
+            }
+            if (DeployerSettings.isAutoHeal()) {
+                heal();
+            }
+            checkErrors = 0;
+        } catch (RuntimeException e) {
+            checkErrors++;
+            delay = backoff(interval, checkErrors);
+            logger.warning("Health check failed, retrying in " + delay + "s: " + e.getMessage());
+        }
+        schedule(delay);
+    }
+
+    /**
+     * Checks the STARTED and DISCOVERED instances and marks the failed ones.
+     *
+     * @return true if any instance has been marked as failed
+     */
+    private boolean check(ExecutorService executor) {
+        ServiceRegistry registry = ServiceContextProvider.getSvcRegistry();
+        Map<String, String> svcByContainerId = new HashMap<>();
+        for (Service svc : registry.getServices()) {
+            svc.getInstances().stream()
+                    .filter(si -> si.getContainerId() != null)
+                    .filter(si -> si.hasStatus(ServiceInstance.Status.STARTED)
+                            || si.hasStatus(ServiceInstance.Status.DISCOVERED))
+                    .forEach(si -> svcByContainerId.put(si.getContainerId(), svc.getName()));
+        }
+        failures.keySet().retainAll(svcByContainerId.keySet());
+        if (svcByContainerId.isEmpty()) {
+            return false;
+        }
+
+        List<String> ids = new ArrayList<>(svcByContainerId.keySet());
+        int batchSize = DeployerSettings.getHealthCheckBatchSize();
+        List<Future<Map<String, String>>> batches = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += batchSize) {
+            List<String> batch = ids.subList(from, Math.min(ids.size(), from + batchSize));
+            batches.add(executor.submit(() -> DockerClients.getStatuses(batch)));
+        }
+        Map<String, String> statuses = new HashMap<>();
+        batches.forEach(f -> statuses.putAll(Futures.await(f)));
+
+        Map<String, String> failed = new HashMap<>();
+        for (String id : ids) {
+            String status = statuses.get(id);
+            if (status != null && status.startsWith("Up") && !status.contains("(unhealthy)")) {
+                failures.remove(id);
+            } else if (failures.merge(id, 1, Integer::sum) >= DeployerSettings.getHealthCheckFailureThreshold()) {
+                failures.remove(id);
+                failed.put(id, status == null ? "Container not found." : "Container status: " + status + ".");
+            }
+        }
+        if (failed.isEmpty()) {
+            return false;
+        }
+
+        logger.warning(failed.size() + " instances failed the health check.");
+        ServiceContextProvider.updateSvcRegistry(r -> markFailed(r, svcByContainerId, failed));
+        if (DeployerSettings.isAutoHeal()) {
+            remove(svcByContainerId, failed);
+        }
+        return true;
+    }
+
+    private static ServiceRegistry markFailed(ServiceRegistry registry, Map<String, String> svcByContainerId,
+                                              Map<String, String> failed) {
+        ServiceRegistry result = registry;
+        for (Map.Entry<String, String> e : failed.entrySet()) {
+            String svcName = svcByContainerId.get(e.getKey());
+            ServiceInstance si = result.getInstance(svcName, e.getKey());
+            if (si != null) {
+                result = result.withInstance(svcName, result.getService(svcName).getDescriptor(),
+                        si.withStatus(ServiceInstance.Status.ABORTED)
+                                .withStatusDetails("Failed health check. " + e.getValue()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Submits a job per service that deregisters and removes its failed instances, leaving the replicas to be
+     * started by {@link #heal()}.
+     */
+    private void remove(Map<String, String> svcByContainerId, Map<String, String> failed) {
+        Map<String, List<String>> idsBySvc = failed.keySet()
+                .stream()
+                .collect(Collectors.groupingBy(svcByContainerId::get));
+        idsBySvc.forEach((svcName, ids) -> jobs.put(svcName, jobQueue.submit("heal --remove " + svcName, svcName,
+                job -> removeFailed(job, svcName, ids))));
+    }
+
+    private void removeFailed(Job job, String svcName, List<String> ids) {
+        // The instances are looked up again, as previous jobs on the service may have removed them already
+        Service svc = ServiceContextProvider.getSvcRegistry().getService(svcName);
+        if (svc == null) {
+            job.log("Svc " + svcName + " is not running anymore.");
+            return;
+        }
+        List<ServiceInstance> instances = svc.getInstances()
+                .stream()
+                .filter(si -> ids.contains(si.getContainerId()))
+                .collect(Collectors.toList());
+        ServiceScaler scaler = new ServiceScaler(contextBuilder, discoveryProvider, warmPool)
+                .withCancellation(job::isCancelled);
+        job.setTotal(instances.size());
+        scaler.deregister(svc, instances);
+        List<ServiceInstance> removed = scaler.scaleDown(svc, instances, si -> job.progress(si.getContainerName() + " removed"));
+        missingReplicas.merge(svcName, removed.size(), Integer::sum);
+        onChange.run();
+    }
+
+    /**
+     * Submits a job starting the replicas that replace the removed instances, for every service that is not
+     * backing off and has no removal or replacement pending.
+     */
+    private void heal() {
+        for (String svcName : new ArrayList<>(missingReplicas.keySet())) {
+            if (ServiceContextProvider.getSvcRegistry().getService(svcName) == null) {
+                missingReplicas.remove(svcName);
+                continue;
+            }
+            if (jobs.containsKey(svcName) || nextHealAt.getOrDefault(svcName, 0L) > System.currentTimeMillis()) {
+                continue;
+            }
+            jobs.put(svcName, jobQueue.submit("heal " + svcName, svcName, job -> replace(job, svcName)));
+        }
+    }
+
+    private void replace(Job job, String svcName) {
+        Service svc = ServiceContextProvider.getSvcRegistry().getService(svcName);
+        Integer missing = missingReplicas.get(svcName);
+        if (svc == null || missing == null) {
+            job.log("Nothing to be done.");
+            return;
+        }
+
+        ServiceScaler scaler = new ServiceScaler(contextBuilder, discoveryProvider, warmPool)
+                .withCancellation(job::isCancelled);
+        job.setTotal(missing);
+        List<ServiceInstance> replicas = scaler.scaleUp(svc, missing, si -> {
+            job.progress(si.getContainerName() + " " + si.getStatus());
+            logger.info("Replaced failed instance of svc " + svcName + " with " + si.getContainerName());
+        });
+        List<ServiceInstance> notDiscovered = replicas.stream()
+                .filter(si -> !si.hasStatus(ServiceInstance.Status.DISCOVERED))
+                .collect(Collectors.toList());
+        if (notDiscovered.isEmpty() && replicas.size() == missing) {
+            missingReplicas.remove(svcName);
+            healAttempts.remove(svcName);
+            nextHealAt.remove(svcName);
+            onChange.run();
+            return;
+        }
+
+        // Replicas that could not be discovered are removed and, as the ones a cancelled job did not start,
+        // started again by the next attempt
+        scaler.scaleDown(svc, notDiscovered, si -> {});
+        int stillMissing = missing - replicas.size() + notDiscovered.size();
+        missingReplicas.put(svcName, stillMissing);
+        int attempts = healAttempts.merge(svcName, 1, Integer::sum);
+        long delay = backoff(DeployerSettings.getHealBackoff(), attempts);
+        nextHealAt.put(svcName, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(delay));
+        job.log(String.format("Could not replace %d instances, retrying in %ds.", stillMissing, delay));
+        logger.warning(String.format("Could not replace %d instances of svc %s, retrying in %ds.",
+                stillMissing, svcName, delay));
+        onChange.run();
+    }
+
+    private static long backoff(long base, int attempts) {
+        return base * Math.min(MAX_BACKOFF_FACTOR, 1L << Math.min(attempts - 1, 30));
+    }
+
+}
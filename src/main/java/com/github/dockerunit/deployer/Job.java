@@ -0,0 +1,122 @@
+package com.github.dockerunit.deployer;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * A lifecycle operation run by the {@link JobQueue}.
+ * Cancellation is cooperative: the operation checks {@link #isCancelled()} between units of work and lets the
+ * ones in progress complete, so that every container that has been created is still tracked for cleanup.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class Job {
+
+    private static final Logger logger = Logger.getLogger(Job.class.getSimpleName());
+
+    public enum State {
+        QUEUED, RUNNING, DONE, FAILED, CANCELLED;
+
+        public boolean isFinished() {
+            return this == DONE || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    @Getter
+    private final int id;
+
+    @Getter
+    private final String description;
+
+    /**
+     * The services the job works on, empty if it works on all of them or on none.
+     */
+    @Getter
+    private final Set<String> services;
+
+    private final AtomicBoolean cancelled = new AtomicBoolean(false);
+    private final AtomicInteger completed = new AtomicInteger(0);
+    private volatile int total = 0;
+
+    @Getter
+    private volatile State state = State.QUEUED;
+
+    @Getter
+    private volatile String message = "";
+
+    private volatile long startedAt = 0;
+    private volatile long finishedAt = 0;
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * Sets the number of units of work (e.g. replicas) the job is made of.
+     */
+    public void setTotal(int total) {
+        this.total = total;
+    }
+
+    /**
+     * Records the completion of a unit of work.
+     */
+    public void progress(String message) {
+        completed.incrementAndGet();
+        this.message = message;
+    }
+
+    public void log(String message) {
+        this.message = message;
+    }
+
+    public String getProgress() {
+        return total == 0 ? "-" : String.format("%d/%d", completed.get(), total);
+    }
+
+    public long getElapsedMillis() {
+        if (startedAt == 0) {
+            return 0;
+        }
+        return (finishedAt == 0 ? System.currentTimeMillis() : finishedAt) - startedAt;
+    }
+
+    /**
+     * Asks the job to stop after the units of work in progress.
+     *
+     * @return false if the job had already finished
+     */
+    boolean cancel() {
+        if (state.isFinished()) {
+            return false;
+        }
+        cancelled.set(true);
+        return true;
+    }
+
+    void run(Consumer<Job> operation) {
+        startedAt = System.currentTimeMillis();
+        try {
+            if (cancelled.get()) {
+                state = State.CANCELLED;
+                return;
+            }
+            state = State.RUNNING;
+            operation.accept(this);
+            state = cancelled.get() ? State.CANCELLED : State.DONE;
+        } catch (RuntimeException e) {
+            logger.warning("Job " + id + " (" + description + ") failed: " + e.getMessage());
+            message = String.valueOf(e.getMessage());
+            state = cancelled.get() ? State.CANCELLED : State.FAILED;
+        } finally {
+            finishedAt = System.currentTimeMillis();
+        }
+    }
+
+}
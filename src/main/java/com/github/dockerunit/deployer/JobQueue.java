@@ -0,0 +1,164 @@
+package com.github.dockerunit.deployer;
+
+import com.github.dockerunit.deployer.util.ThreadFactories;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Runs lifecycle operations in the background.
+ * Jobs working on the same service run one after the other, in submission order, while jobs working on
+ * different services run in parallel. A job working on all the services waits for every job submitted before it,
+ * and every job submitted after it waits for it. A job working on no service only waits for the jobs working on all
+ * of them.
+ */
+public class JobQueue {
+
+    private static final Logger logger = Logger.getLogger(JobQueue.class.getSimpleName());
+
+    private static final String ALL_SERVICES = "*";
+
+    private static final int MAX_FINISHED_JOBS = 50;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(ThreadFactories.named("dude-job"));
+    private final AtomicInteger ids = new AtomicInteger(0);
+
+    private final Map<Integer, Job> jobs = new LinkedHashMap<>();
+    // The completion of the last job submitted for every service
+    private final Map<String, CompletableFuture<Void>> tails = new HashMap<>();
+    // The completion of the jobs working on no service, which the jobs working on all of them still wait for
+    private final Set<CompletableFuture<Void>> unlocked = new HashSet<>();
+
+    private volatile Consumer<Job> onFinished = job -> {};
+
+    /**
+     * Sets the callback notified every time a job finishes, from the thread that ran it.
+     */
+    public void setOnFinished(Consumer<Job> onFinished) {
+        this.onFinished = onFinished;
+    }
+
+    public Job submit(String description, String svcName, Consumer<Job> operation) {
+        return submit(description, Collections.singleton(svcName), operation);
+    }
+
+    public Job submitForAll(String description, Consumer<Job> operation) {
+        return submit(description, Collections.emptySet(), true, operation);
+    }
+
+    /**
+     * Submits a job working on the given services. An empty set runs the job without waiting for any per-service job.
+     */
+    public Job submit(String description, Set<String> services, Consumer<Job> operation) {
+        return submit(description, services, false, operation);
+    }
+
+    private synchronized Job submit(String description, Set<String> services, boolean allServices, Consumer<Job> operation) {
+        Job job = new Job(ids.incrementAndGet(), description, services);
+        unlocked.removeIf(CompletableFuture::isDone);
+        List<CompletableFuture<Void>> previous = new ArrayList<>();
+        if (allServices) {
+            previous.addAll(tails.values());
+            previous.addAll(unlocked);
+        } else {
+            services.stream()
+                    .map(tails::get)
+                    .filter(f -> f != null)
+                    .forEach(previous::add);
+            Optional.ofNullable(tails.get(ALL_SERVICES)).ifPresent(previous::add);
+        }
+
+        // Job.run never throws, so a job only waits for the previous ones to complete
+        CompletableFuture<Void> completion = CompletableFuture.allOf(previous.toArray(new CompletableFuture[0]))
+                .thenRunAsync(() -> {
+                    job.run(operation);
+                    notifyFinished(job);
+                }, executor);
+        if (allServices) {
+            tails.clear();
+            unlocked.clear();
+            tails.put(ALL_SERVICES, completion);
+        } else if (services.isEmpty()) {
+            unlocked.add(completion);
+        } else {
+            services.forEach(svc -> tails.put(svc, completion));
+        }
+
+        jobs.put(job.getId(), job);
+        pruneFinishedJobs();
+        return job;
+    }
+
+    public synchronized List<Job> getJobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    public synchronized Optional<Job> getJob(int id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * @return false if the job does not exist or has already finished
+     */
+    public synchronized boolean cancel(int id) {
+        Job job = jobs.get(id);
+        return job != null && job.cancel();
+    }
+
+    /**
+     * @return the jobs that have been asked to stop
+     */
+    public synchronized List<Job> cancelAll() {
+        return jobs.values()
+                .stream()
+                .filter(Job::cancel)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Waits for every job submitted so far to finish.
+     */
+    public void awaitAll() {
+        List<CompletableFuture<Void>> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(tails.values());
+            pending.addAll(unlocked);
+        }
+        CompletableFuture.allOf(pending.toArray(new CompletableFuture[0])).join();
+    }
+
+    private void notifyFinished(Job job) {
+        try {
+            onFinished.accept(job);
+        } catch (RuntimeException e) {
+            logger.warning("Could not report the completion of job " + job.getId() + ": " + e.getMessage());
+        }
+    }
+
+    private void pruneFinishedJobs() {
+        long finished = jobs.values().stream().filter(j -> j.getState().isFinished()).count();
+        Iterator<Job> it = jobs.values().iterator();
+        while (finished > MAX_FINISHED_JOBS && it.hasNext()) {
+            if (it.next().getState().isFinished()) {
+                it.remove();
+                finished--;
+            }
+        }
+    }
+
+}
@@ -1,26 +1,109 @@
 package com.github.dockerunit.deployer;
 
 import com.github.dockerunit.core.ServiceContext;
+import lombok.Value;
 
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * Holds the state of the running services as an immutable, versioned {@link Snapshot}.
+ * Readers never block. Writers publish new snapshots through compare-and-set, so concurrent updates
+ * (shell commands, background jobs) can never overwrite each other.
+ * Update functions may be invoked more than once under contention, so they must be free of side effects.
+ */
 public class ServiceContextProvider {
 
-    private static ServiceContext svcContext;
+    private static final AtomicReference<Snapshot> snapshot =
+            new AtomicReference<>(new Snapshot(0L, ServiceRegistry.empty(), null, null));
+
+    public static Snapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Returns a counter that is incremented by every update, so consumers can cheaply tell whether anything changed.
+     */
+    public static long getVersion() {
+        return snapshot.get().getVersion();
+    }
+
+    public static ServiceRegistry getSvcRegistry() {
+        return snapshot.get().getSvcRegistry();
+    }
+
+    public static ServiceContext getSvcContext() {
+        return getSvcRegistry().toContext();
+    }
+
+    public static ServiceContext getDiscoveryContext() {
+        return snapshot.get().getDiscoveryContext();
+    }
+
+    /**
+     * Atomically applies the given function to the current registry and publishes the result.
+     *
+     * @return the published registry
+     */
+    public static ServiceRegistry updateSvcRegistry(UnaryOperator<ServiceRegistry> update) {
+        return snapshot.updateAndGet(current -> new Snapshot(current.getVersion() + 1,
+                nonNull(update.apply(current.getSvcRegistry())),
+                current.getDiscoveryContext(),
+                current.getStandbyContext()))
+                .getSvcRegistry();
+    }
+
+    /**
+     * Publishes the given registry only if the current one is still the expected instance.
+     */
+    public static boolean compareAndSetSvcRegistry(ServiceRegistry expected, ServiceRegistry svcRegistry) {
+        Snapshot current = snapshot.get();
+        if (current.getSvcRegistry() != expected) {
+            return false;
+        }
+        return snapshot.compareAndSet(current, new Snapshot(current.getVersion() + 1,
+                nonNull(svcRegistry), current.getDiscoveryContext(), current.getStandbyContext()));
+    }
 
-    private static ServiceContext discoveryContext;
+    public static ServiceContext updateDiscoveryContext(UnaryOperator<ServiceContext> update) {
+        return snapshot.updateAndGet(current -> new Snapshot(current.getVersion() + 1,
+                current.getSvcRegistry(),
+                update.apply(current.getDiscoveryContext()),
+                current.getStandbyContext()))
+                .getDiscoveryContext();
+    }
+
+    /**
+     * Publishes the standby containers of the warm pool, which are not part of the running services.
+     */
+    public static void setStandbyContext(ServiceContext standbyContext) {
+        snapshot.updateAndGet(current -> new Snapshot(current.getVersion() + 1,
+                current.getSvcRegistry(),
+                current.getDiscoveryContext(),
+                standbyContext));
+    }
+
+    public static void setSvcRegistry(ServiceRegistry svcRegistry) {
+        updateSvcRegistry(current -> svcRegistry);
+    }
 
-    public static synchronized ServiceContext getSvcContext() {
-        return svcContext;
+    public static void setSvcContext(ServiceContext svcContext) {
+        setSvcRegistry(ServiceRegistry.of(svcContext));
     }
 
-    public static synchronized void setSvcContext(ServiceContext svcContext) {
-        ServiceContextProvider.svcContext = svcContext;
+    public static void setDiscoveryContext(ServiceContext discoveryContext) {
+        updateDiscoveryContext(current -> discoveryContext);
     }
 
-    public static synchronized ServiceContext getDiscoveryContext() {
-        return discoveryContext;
+    private static ServiceRegistry nonNull(ServiceRegistry registry) {
+        return registry == null ? ServiceRegistry.empty() : registry;
     }
 
-    public static synchronized void setDiscoveryContext(ServiceContext discoveryContext) {
-        ServiceContextProvider.discoveryContext = discoveryContext;
+    @Value
+    public static class Snapshot {
+        private final long version;
+        private final ServiceRegistry svcRegistry;
+        private final ServiceContext discoveryContext;
+        private final ServiceContext standbyContext;
     }
 }
@@ -0,0 +1,207 @@
+package com.github.dockerunit.deployer;
+
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceContext;
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.core.internal.ServiceDescriptor;
+import com.github.dockerunit.core.internal.service.DefaultServiceContext;
+import com.github.dockerunit.deployer.util.PersistentMap;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Immutable index of the running services, keyed by service name and then by container id.
+ * Every update returns a new registry that shares all the untouched services and instances with the previous one:
+ * both indexes are {@link PersistentMap}s, so an update only copies the few nodes leading to the changed entries,
+ * however many services and instances are registered. Registries can therefore be published and read concurrently
+ * without any locking.
+ */
+public final class ServiceRegistry {
+
+    private static final ServiceRegistry EMPTY = new ServiceRegistry(PersistentMap.empty());
+
+    private final PersistentMap<String, Entry> entries;
+
+    private volatile ServiceContext context;
+
+    private ServiceRegistry(PersistentMap<String, Entry> entries) {
+        this.entries = entries;
+    }
+
+    public static ServiceRegistry empty() {
+        return EMPTY;
+    }
+
+    public static ServiceRegistry of(ServiceContext context) {
+        return context == null ? EMPTY : EMPTY.merge(context);
+    }
+
+    /**
+     * Adds the instances of every service in the given context, replacing the ones with the same container id.
+     */
+    public ServiceRegistry merge(ServiceContext context) {
+        PersistentMap<String, Entry> newEntries = entries;
+        for (Service svc : context.getServices()) {
+            Entry merged = merged(newEntries.get(svc.getName()), svc.getDescriptor(), svc.getInstances());
+            newEntries = newEntries.plus(svc.getName(), merged);
+        }
+        return new ServiceRegistry(newEntries);
+    }
+
+    /**
+     * Replaces the whole service with the given one.
+     */
+    public ServiceRegistry withService(Service svc) {
+        return withoutService(svc.getName()).withInstances(svc.getName(), svc.getDescriptor(), svc.getInstances());
+    }
+
+    public ServiceRegistry withoutService(String name) {
+        if (!entries.containsKey(name)) {
+            return this;
+        }
+        return new ServiceRegistry(entries.minus(name));
+    }
+
+    /**
+     * Adds (or replaces) the given instances of a service, creating the service if it is not registered yet.
+     * The descriptor of an already registered service is preserved.
+     */
+    public ServiceRegistry withInstances(String name, ServiceDescriptor descriptor, Collection<ServiceInstance> instances) {
+        return withEntry(name, merged(entries.get(name), descriptor, instances));
+    }
+
+    /**
+     * Replaces the descriptor of a registered service, keeping its instances.
+     */
+    public ServiceRegistry withDescriptor(String name, ServiceDescriptor descriptor) {
+        Entry current = entries.get(name);
+        if (current == null) {
+            return this;
+        }
+        return withEntry(name, new Entry(descriptor, current.instances));
+    }
+
+    public ServiceRegistry withInstance(String name, ServiceDescriptor descriptor, ServiceInstance instance) {
+        return withInstances(name, descriptor, Collections.singleton(instance));
+    }
+
+    /**
+     * Removes the given instances of a service. The service stays registered, even if no instances are left.
+     */
+    public ServiceRegistry withoutInstances(String name, Collection<ServiceInstance> instances) {
+        Entry current = entries.get(name);
+        if (current == null) {
+            return this;
+        }
+        PersistentMap<String, ServiceInstance> newInstances = current.instances;
+        for (ServiceInstance si : instances) {
+            newInstances = newInstances.minus(instanceKey(si));
+        }
+        return withEntry(name, new Entry(current.descriptor, newInstances));
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    public Set<String> getServiceNames() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    public Service getService(String name) {
+        Entry entry = entries.get(name);
+        return entry == null ? null : entry.toService(name);
+    }
+
+    public ServiceInstance getInstance(String name, String containerId) {
+        Entry entry = entries.get(name);
+        return entry == null ? null : entry.instances.get(containerId);
+    }
+
+    /**
+     * Finds the service that owns the given container, or null if the container is not tracked.
+     */
+    public Service findServiceByContainerId(String containerId) {
+        Service[] found = new Service[1];
+        entries.forEach((name, entry) -> {
+            if (found[0] == null && entry.instances.containsKey(containerId)) {
+                found[0] = entry.toService(name);
+            }
+        });
+        return found[0];
+    }
+
+    public Set<Service> getServices() {
+        Set<Service> services = new HashSet<>();
+        entries.forEach((name, entry) -> services.add(entry.toService(name)));
+        return services;
+    }
+
+    public int getInstancesCount() {
+        return entries.values().stream()
+                .mapToInt(e -> e.instances.size())
+                .sum();
+    }
+
+    /**
+     * Returns this registry as a {@link ServiceContext}. The context is built once and then cached.
+     */
+    public ServiceContext toContext() {
+        ServiceContext result = context;
+        if (result == null) {
+            result = new DefaultServiceContext(getServices());
+            context = result;
+        }
+        return result;
+    }
+
+    public static String instanceKey(ServiceInstance si) {
+        if (si.getContainerId() != null) {
+            return si.getContainerId();
+        }
+        if (si.getContainerName() != null) {
+            return si.getContainerName();
+        }
+        return "@" + System.identityHashCode(si);
+    }
+
+    private static Entry merged(Entry current, ServiceDescriptor descriptor, Collection<ServiceInstance> instances) {
+        PersistentMap<String, ServiceInstance> newInstances = current == null
+                ? PersistentMap.empty()
+                : current.instances;
+        for (ServiceInstance si : instances) {
+            newInstances = newInstances.plus(instanceKey(si), si);
+        }
+        return new Entry(current == null ? descriptor : current.descriptor, newInstances);
+    }
+
+    private ServiceRegistry withEntry(String name, Entry entry) {
+        return new ServiceRegistry(entries.plus(name, entry));
+    }
+
+    private static final class Entry {
+
+        private final ServiceDescriptor descriptor;
+        private final PersistentMap<String, ServiceInstance> instances;
+
+        private volatile Service service;
+
+        private Entry(ServiceDescriptor descriptor, PersistentMap<String, ServiceInstance> instances) {
+            this.descriptor = descriptor;
+            this.instances = instances;
+        }
+
+        private Service toService(String name) {
+            Service result = service;
+            if (result == null) {
+                result = new Service(name, new HashSet<>(instances.values()), descriptor);
+                service = result;
+            }
+            return result;
+        }
+    }
+
+}
@@ -0,0 +1,265 @@
+package com.github.dockerunit.deployer;
+
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceContext;
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.core.discovery.DiscoveryProvider;
+import com.github.dockerunit.core.internal.ServiceContextBuilder;
+import com.github.dockerunit.core.internal.ServiceDescriptor;
+import com.github.dockerunit.core.internal.reflect.DefaultServiceDescriptor;
+import com.github.dockerunit.core.internal.service.DefaultServiceContext;
+import com.github.dockerunit.deployer.metrics.MetricsRegistry;
+import com.github.dockerunit.deployer.util.Futures;
+import com.github.dockerunit.deployer.util.ThreadFactories;
+import lombok.RequiredArgsConstructor;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Adds and removes replicas of a running service.
+ * Every replica is created, discovered and published to the {@link ServiceContextProvider} on its own,
+ * with up to {@code parallelism} replicas being processed at the same time.
+ */
+@RequiredArgsConstructor
+public class ServiceScaler {
+
+    private static final Logger logger = Logger.getLogger(ServiceScaler.class.getSimpleName());
+
+    private static final SecureRandom random = new SecureRandom();
+
+    private static final long DRAIN_TIMEOUT_SECONDS = 120;
+
+    private final ServiceContextBuilder contextBuilder;
+    private final DiscoveryProvider discoveryProvider;
+    private final int parallelism;
+    private final WarmPool warmPool;
+
+    private BooleanSupplier cancellation = () -> false;
+
+    public ServiceScaler(ServiceContextBuilder contextBuilder, DiscoveryProvider discoveryProvider) {
+        this(contextBuilder, discoveryProvider, null);
+    }
+
+    public ServiceScaler(ServiceContextBuilder contextBuilder, DiscoveryProvider discoveryProvider, WarmPool warmPool) {
+        this(contextBuilder, discoveryProvider, DeployerSettings.getScalingParallelism(), warmPool);
+    }
+
+    /**
+     * Makes the scaler stop creating or removing replicas as soon as the given condition holds.
+     * The replicas in progress are completed and published, so that they can be cleaned up later.
+     */
+    public ServiceScaler withCancellation(BooleanSupplier cancellation) {
+        this.cancellation = cancellation;
+        return this;
+    }
+
+    /**
+     * Starts the given number of new replicas of the service, taking standby containers from the warm pool first.
+     * Discovery is only performed for the new replicas, and the listener is notified as soon as each of them
+     * has been processed, whatever its final status.
+     *
+     * @return the new instances
+     */
+    public List<ServiceInstance> scaleUp(Service svc, int replicas, Consumer<ServiceInstance> listener) {
+        boolean randomise = svc.getDescriptor().getContainerName() != null
+                && !svc.getDescriptor().getContainerName().isEmpty();
+        return MetricsRegistry.time(MetricsRegistry.SCALE_UP, svc.getName(),
+                () -> runConcurrently(replicas, "dude-scale-up", i -> startReplica(svc, randomise, listener)));
+    }
+
+    /**
+     * Stops and removes the given instances of the service.
+     *
+     * @return the instances that have been removed
+     */
+    public List<ServiceInstance> scaleDown(Service svc, Collection<ServiceInstance> instances,
+                                           Consumer<ServiceInstance> listener) {
+        List<ServiceInstance> killable = new ArrayList<>(instances);
+        return MetricsRegistry.time(MetricsRegistry.SCALE_DOWN, svc.getName(),
+                () -> runConcurrently(killable.size(), "dude-scale-down",
+                        i -> stopReplica(svc, killable.get(i), listener)));
+    }
+
+    /**
+     * Replaces the instances of the service one at a time, so that it never drops to zero instances.
+     * Every old instance is deregistered and removed only after its replacement has been discovered.
+     * The restart stops at the first replacement that cannot be discovered, leaving the remaining old instances in place.
+     *
+     * @return the instances that have been started
+     */
+    public List<ServiceInstance> rollingRestart(Service svc, Consumer<ServiceInstance> listener) {
+        List<ServiceInstance> started = new ArrayList<>();
+        for (ServiceInstance old : svc.getInstances()) {
+            if (cancellation.getAsBoolean()) {
+                return started;
+            }
+            List<ServiceInstance> replacement = scaleUp(svc, 1, listener);
+            started.addAll(replacement);
+            if (replacement.stream().noneMatch(si -> si.hasStatus(ServiceInstance.Status.DISCOVERED))) {
+                logger.warning("Rolling restart of svc " + svc.getName() + " stopped as a replacement could not be discovered.");
+                return started;
+            }
+            deregister(svc, Collections.singleton(old));
+            stopReplica(svc, old, si -> {});
+        }
+        return started;
+    }
+
+    /**
+     * Removes the given instances from the discovery registry, leaving every other instance registered.
+     */
+    public void deregister(Service svc, Collection<ServiceInstance> instances) {
+        Set<Service> toBeDeregistered = new HashSet<>();
+        toBeDeregistered.add(new Service(svc.getName(), new HashSet<>(instances), svc.getDescriptor()));
+        ServiceContext remaining = ServiceContextProvider.getSvcRegistry()
+                .withoutInstances(svc.getName(), instances)
+                .toContext();
+        discoveryProvider.clearRegistry(new DefaultServiceContext(toBeDeregistered), remaining);
+    }
+
+    public static ServiceDescriptor buildDeltaDescriptor(ServiceDescriptor sd, int instances, boolean randomiseContainerName) {
+        return DefaultServiceDescriptor.builder()
+                .containerName(randomiseContainerName? randomise(sd.getContainerName()) : sd.getContainerName())
+                .customisationHook(sd.getCustomisationHook())
+                .instance(sd.getInstance())
+                .options(sd.getOptions())
+                .priority(sd.getPriority())
+                .svcDefinition(sd.getSvcDefinition())
+                .replicas(instances)
+                .build();
+    }
+
+    private List<ServiceInstance> startReplica(Service svc, boolean randomise, Consumer<ServiceInstance> listener) {
+        ServiceContext ctx = warmPool == null ? null : warmPool.take(svc);
+        if (ctx == null) {
+            long start = System.nanoTime();
+            ctx = contextBuilder.buildServiceContext(buildDeltaDescriptor(svc.getDescriptor(), 1, randomise));
+            MetricsRegistry.record(MetricsRegistry.CONTAINER_BUILD, svc.getName(), start);
+        }
+        if (ctx.checkStatus(ServiceInstance.Status.STARTED)) {
+            ServiceContext started = ctx;
+            try {
+                ctx = MetricsRegistry.time(MetricsRegistry.DISCOVERY, svc.getName(),
+                        () -> discoveryProvider.populateRegistry(started));
+            } catch (RuntimeException e) {
+                // The container exists, so it is published as aborted to be cleaned up later
+                publish(svc, started.getServices().stream()
+                        .flatMap(s -> s.getInstances().stream())
+                        .map(si -> si.withStatus(ServiceInstance.Status.ABORTED)
+                                .withStatusDetails("Discovery failed: " + e.getMessage()))
+                        .collect(Collectors.toSet()), listener);
+                throw e;
+            }
+        } else {
+            logger.warning("Replica of svc " + svc.getName() + " failed to start: " + ctx.getFormattedErrors());
+        }
+
+        Set<ServiceInstance> instances = ctx.getServices().stream()
+                .flatMap(s -> s.getInstances().stream())
+                .collect(Collectors.toSet());
+        publish(svc, instances, listener);
+        return new ArrayList<>(instances);
+    }
+
+    private static void publish(Service svc, Set<ServiceInstance> instances, Consumer<ServiceInstance> listener) {
+        ServiceContextProvider.updateSvcRegistry(registry ->
+                registry.withInstances(svc.getName(), svc.getDescriptor(), instances));
+        instances.forEach(listener);
+    }
+
+    private List<ServiceInstance> stopReplica(Service svc, ServiceInstance si, Consumer<ServiceInstance> listener) {
+        Set<ServiceInstance> toBeRemoved = new HashSet<>();
+        toBeRemoved.add(si);
+        Set<Service> toBeCleaned = new HashSet<>();
+        toBeCleaned.add(new Service(svc.getName(), toBeRemoved, buildDeltaDescriptor(svc.getDescriptor(), 1, false)));
+
+        contextBuilder.clearContext(new DefaultServiceContext(toBeCleaned));
+        ServiceContextProvider.updateSvcRegistry(registry -> registry.withoutInstances(svc.getName(), toBeRemoved));
+        listener.accept(si);
+        return Collections.singletonList(si);
+    }
+
+    private List<ServiceInstance> runConcurrently(int tasks, String threadPrefix, ReplicaTask task) {
+        if (tasks <= 0) {
+            return Collections.emptyList();
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, tasks),
+                ThreadFactories.named(threadPrefix));
+        AtomicBoolean failed = new AtomicBoolean(false);
+        try {
+            List<Future<List<ServiceInstance>>> futures = IntStream.range(0, tasks)
+                    .mapToObj(i -> executor.submit(() -> cancellation.getAsBoolean() || failed.get()
+                            ? Collections.<ServiceInstance>emptyList()
+                            : task.run(i)))
+                    .collect(Collectors.toList());
+            List<ServiceInstance> result = new ArrayList<>();
+            for (Future<List<ServiceInstance>> future : futures) {
+                result.addAll(Futures.await(future));
+            }
+            return result;
+        } catch (RuntimeException e) {
+            // The replicas that have not started yet are skipped
+            failed.set(true);
+            throw e;
+        } finally {
+            executor.shutdown();
+            drain(executor);
+        }
+    }
+
+    /**
+     * Waits for the replicas in progress, which publish their instances to the registry and the listener once
+     * completed, so that a failed or interrupted scaling leaves every container tracked.
+     */
+    private static void drain(ExecutorService executor) {
+        // The interrupt that may have stopped the scaling must not stop the wait as well
+        boolean interrupted = Thread.interrupted();
+        try {
+            if (!executor.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warning("Replicas still in progress after " + DRAIN_TIMEOUT_SECONDS
+                        + "s, their containers may not be tracked.");
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String randomise(String containerName) {
+        if(containerName == null) {
+            containerName = "";
+        }
+        byte[] bytes = new byte[4];
+        random.nextBytes(bytes);
+        return containerName.concat("-")
+                .concat(Base64.getEncoder().encodeToString(bytes)
+                .replaceAll("=", "0")
+                .replaceAll("\\+", "1")
+                .replaceAll("/", "2"));
+    }
+
+    @FunctionalInterface
+    private interface ReplicaTask {
+        List<ServiceInstance> run(int replica);
+    }
+
+}
@@ -0,0 +1,242 @@
+package com.github.dockerunit.deployer;
+
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceContext;
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.core.internal.ServiceDescriptor;
+import com.github.dockerunit.core.internal.UsageDescriptor;
+import com.github.dockerunit.core.internal.service.DefaultServiceContext;
+import com.github.dockerunit.deployer.placement.PlacementScheduler;
+import com.github.dockerunit.deployer.util.Descriptors;
+import lombok.Value;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persists the running services and discovery provider containers to a tab separated session file,
+ * so that a new shell can attach to them instead of recreating them.
+ * Descriptors are not persisted: they are rebuilt from the Dockerunit class when the session is loaded.
+ */
+public class SessionStore {
+
+    private static final Logger logger = Logger.getLogger(SessionStore.class.getSimpleName());
+
+    private static final String HEADER = "# dude-session 1";
+    private static final String INSTANCE = "instance";
+    private static final String DISCOVERY = "discovery";
+    private static final String STANDBY = "standby";
+    private static final String FINGERPRINT = "fingerprint";
+    private static final String NULL = "-";
+
+    private final Path file;
+
+    private long savedVersion = -1;
+
+    public SessionStore(Path file) {
+        this.file = file;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Writes the given snapshot, unless it has already been written.
+     *
+     * @return true if the file has been written
+     */
+    public synchronized boolean save(ServiceContextProvider.Snapshot snapshot) {
+        if (snapshot.getVersion() == savedVersion) {
+            return false;
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        for (Service svc : snapshot.getSvcRegistry().getServices()) {
+            if (svc.getDescriptor() != null) {
+                // Services scaled since they were started still match their descriptor
+                lines.add(String.join("\t", FINGERPRINT, svc.getName(), Descriptors.replicaFingerprint(svc.getDescriptor())));
+            }
+        }
+        appendInstances(lines, INSTANCE, snapshot.getSvcRegistry().getServices());
+        if (snapshot.getDiscoveryContext() != null) {
+            appendInstances(lines, DISCOVERY, snapshot.getDiscoveryContext().getServices());
+        }
+        if (snapshot.getStandbyContext() != null) {
+            appendInstances(lines, STANDBY, snapshot.getStandbyContext().getServices());
+        }
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(tmp, lines, StandardCharsets.UTF_8);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            savedVersion = snapshot.getVersion();
+            return true;
+        } catch (IOException e) {
+            logger.warning("Could not write session file " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public Optional<Session> load() {
+        if (!Files.isRegularFile(file)) {
+            return Optional.empty();
+        }
+        try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            Map<String, List<ServiceInstance>> services = new LinkedHashMap<>();
+            Map<String, List<ServiceInstance>> discovery = new LinkedHashMap<>();
+            Map<String, List<ServiceInstance>> standby = new LinkedHashMap<>();
+            Map<String, String> fingerprints = new LinkedHashMap<>();
+            lines.filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                    .map(line -> line.split("\t", -1))
+                    .forEach(fields -> {
+                        if (INSTANCE.equals(fields[0])) {
+                            services.computeIfAbsent(fields[1], name -> new ArrayList<>()).add(parseInstance(fields));
+                            // Containers placed on other Docker endpoints are removed and inspected through them
+                            if (fields.length > 9) {
+                                PlacementScheduler.adopt(parse(fields[2]), parse(fields[9]), fields[1]);
+                            }
+                        } else if (DISCOVERY.equals(fields[0])) {
+                            discovery.computeIfAbsent(fields[1], name -> new ArrayList<>()).add(parseInstance(fields));
+                        } else if (STANDBY.equals(fields[0])) {
+                            standby.computeIfAbsent(fields[1], name -> new ArrayList<>()).add(parseInstance(fields));
+                            if (fields.length > 9) {
+                                PlacementScheduler.adopt(parse(fields[2]), parse(fields[9]), fields[1]);
+                            }
+                        } else if (FINGERPRINT.equals(fields[0])) {
+                            fingerprints.put(fields[1], fields[2]);
+                        }
+                    });
+            return Optional.of(new Session(services, discovery, standby, fingerprints));
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Could not read session file " + file + ": " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    public synchronized void delete() {
+        try {
+            Files.deleteIfExists(file);
+            savedVersion = -1;
+        } catch (IOException e) {
+            logger.warning("Could not delete session file " + file + ": " + e.getMessage());
+        }
+    }
+
+    private void appendInstances(List<String> lines, String type, Collection<Service> services) {
+        for (Service svc : services) {
+            for (ServiceInstance si : svc.getInstances()) {
+                lines.add(String.join("\t", type, svc.getName(),
+                        format(si.getContainerId()),
+                        format(si.getContainerName()),
+                        format(si.getGatewayAddress()),
+                        String.valueOf(si.getGatewayPort()),
+                        format(si.getContainerIp()),
+                        String.valueOf(si.getContainerPort()),
+                        si.getStatus().name(),
+                        format(PlacementScheduler.endpointNameOf(si.getContainerId()).orElse(null))));
+            }
+        }
+    }
+
+    private ServiceInstance parseInstance(String[] fields) {
+        return ServiceInstance.builder()
+                .containerId(parse(fields[2]))
+                .containerName(parse(fields[3]))
+                .gatewayAddress(parse(fields[4]))
+                .gatewayPort(Integer.parseInt(fields[5]))
+                .containerIp(parse(fields[6]))
+                .containerPort(Integer.parseInt(fields[7]))
+                .status(ServiceInstance.Status.valueOf(fields[8]))
+                .statusDetails("Attached from session")
+                .build();
+    }
+
+    private static String format(String value) {
+        return value == null || value.isEmpty() ? NULL : value.replaceAll("[\t\n]", " ");
+    }
+
+    private static String parse(String value) {
+        return NULL.equals(value) ? null : value;
+    }
+
+    @Value
+    public static class Session {
+        private final Map<String, List<ServiceInstance>> services;
+        private final Map<String, List<ServiceInstance>> discoveryServices;
+        /**
+         * The standby containers of the warm pool, which are not part of the services.
+         */
+        private final Map<String, List<ServiceInstance>> standbyServices;
+        private final Map<String, String> fingerprints;
+
+        public List<String> getContainerIds() {
+            return Stream.concat(services.values().stream(), discoveryServices.values().stream())
+                    .flatMap(List::stream)
+                    .map(ServiceInstance::getContainerId)
+                    .collect(Collectors.toList());
+        }
+
+        /**
+         * Rebuilds the context of the standby containers, without descriptors, so that they can be removed by id.
+         */
+        public ServiceContext toStandbyContext() {
+            Set<Service> result = new HashSet<>();
+            standbyServices.forEach((name, instances) -> result.add(new Service(name, new HashSet<>(instances), null)));
+            return new DefaultServiceContext(result);
+        }
+
+        /**
+         * Rebuilds the context of the services, or returns null if any of them is not declared by the descriptor.
+         */
+        public ServiceContext toSvcContext(UsageDescriptor descriptor) {
+            return toSvcContext(descriptor.getUsages());
+        }
+
+        public ServiceContext toSvcContext(List<ServiceDescriptor> usages) {
+            return toContext(services, usages);
+        }
+
+        public ServiceContext toDiscoveryContext(UsageDescriptor descriptor) {
+            return toContext(discoveryServices, descriptor.getUsages());
+        }
+
+        /**
+         * Rebuilds the context of a single service, using the given descriptor.
+         */
+        public ServiceContext toSvcContext(String svcName, ServiceDescriptor descriptor) {
+            Set<Service> result = new HashSet<>();
+            result.add(new Service(svcName, new HashSet<>(services.getOrDefault(svcName, new ArrayList<>())), descriptor));
+            return new DefaultServiceContext(result);
+        }
+
+        private static ServiceContext toContext(Map<String, List<ServiceInstance>> instances, List<ServiceDescriptor> usages) {
+            Set<Service> result = new HashSet<>();
+            for (Map.Entry<String, List<ServiceInstance>> entry : instances.entrySet()) {
+                Optional<ServiceDescriptor> sd = usages.stream()
+                        .filter(usage -> entry.getKey().equals(Descriptors.serviceName(usage)))
+                        .findFirst();
+                if (!sd.isPresent()) {
+                    return null;
+                }
+                result.add(new Service(entry.getKey(), new HashSet<>(entry.getValue()), sd.get()));
+            }
+            return new DefaultServiceContext(result);
+        }
+    }
+
+}
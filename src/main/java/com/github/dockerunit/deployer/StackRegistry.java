@@ -0,0 +1,114 @@
+package com.github.dockerunit.deployer;
+
+import com.github.dockerunit.core.internal.ServiceDescriptor;
+import com.github.dockerunit.core.internal.reflect.UsageDescriptorBuilder;
+import com.github.dockerunit.deployer.util.Descriptors;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Tracks the services declared by every stack.
+ * All the stacks share the discovery provider, and therefore the service names: a service can only be declared
+ * by one stack.
+ */
+public class StackRegistry {
+
+    private static final Map<String, List<ServiceDescriptor>> usagesByStack = new LinkedHashMap<>();
+    private static final Map<String, String> stackBySvc = new HashMap<>();
+
+    /**
+     * Builds the descriptors of every stack known to the {@link SvcClassLoadingManager}, the first time it is called.
+     *
+     * @throws IllegalStateException if two stacks declare the same service
+     */
+    public static synchronized Map<String, List<ServiceDescriptor>> describe(UsageDescriptorBuilder descriptorBuilder) {
+        if (usagesByStack.isEmpty()) {
+            usagesByStack.putAll(build(descriptorBuilder, SvcClassLoadingManager::getSvcClass));
+            index();
+        }
+        return Collections.unmodifiableMap(usagesByStack);
+    }
+
+    /**
+     * Builds the descriptors of every stack again, from the given stack classes.
+     * The current descriptors are kept if the new ones cannot be built.
+     *
+     * @return the previous descriptors
+     */
+    public static synchronized Map<String, List<ServiceDescriptor>> reload(UsageDescriptorBuilder descriptorBuilder,
+                                                                            Function<String, Class<?>> svcClasses) {
+        Map<String, List<ServiceDescriptor>> previous = new LinkedHashMap<>(usagesByStack);
+        Map<String, List<ServiceDescriptor>> usages = build(descriptorBuilder, svcClasses);
+        usagesByStack.clear();
+        usagesByStack.putAll(usages);
+        index();
+        return previous;
+    }
+
+    private static Map<String, List<ServiceDescriptor>> build(UsageDescriptorBuilder descriptorBuilder,
+                                                              Function<String, Class<?>> svcClasses) {
+        Map<String, List<ServiceDescriptor>> usages = new LinkedHashMap<>();
+        Map<String, String> stacks = new HashMap<>();
+        for (String stack : SvcClassLoadingManager.getStackNames()) {
+            List<ServiceDescriptor> stackUsages = descriptorBuilder
+                    .buildDescriptor(svcClasses.apply(stack))
+                    .getUsages();
+            for (ServiceDescriptor sd : stackUsages) {
+                String previous = stacks.putIfAbsent(Descriptors.serviceName(sd), stack);
+                if (previous != null && !previous.equals(stack)) {
+                    throw new IllegalStateException(String.format("Svc %s is declared by both stack %s and stack %s.",
+                            Descriptors.serviceName(sd), previous, stack));
+                }
+            }
+            usages.put(stack, stackUsages);
+        }
+        return usages;
+    }
+
+    private static void index() {
+        stackBySvc.clear();
+        usagesByStack.forEach((stack, usages) -> usages.forEach(sd -> stackBySvc.put(Descriptors.serviceName(sd), stack)));
+    }
+
+    /**
+     * @return the descriptors of all the stacks
+     */
+    public static List<ServiceDescriptor> allUsages(UsageDescriptorBuilder descriptorBuilder) {
+        return describe(descriptorBuilder).values()
+                .stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
+    public static synchronized boolean isStack(String stack) {
+        return usagesByStack.containsKey(stack);
+    }
+
+    public static synchronized Set<String> getStacks() {
+        return new LinkedHashSet<>(usagesByStack.keySet());
+    }
+
+    /**
+     * @return the names of the services declared by the stack
+     */
+    public static synchronized Set<String> getServices(String stack) {
+        return usagesByStack.getOrDefault(stack, Collections.emptyList())
+                .stream()
+                .map(Descriptors::serviceName)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    public static synchronized Optional<String> getStack(String svcName) {
+        return Optional.ofNullable(stackBySvc.get(svcName));
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.github.dockerunit.deployer;
+
+import com.github.dockerunit.core.ServiceContext;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Starts the services without the shell and waits until all of them have been discovered.
+ * The running containers are recorded in the session file, so that the stop goal can tear them down.
+ */
+@Mojo(name = "start", defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST,
+        requiresDependencyResolution = ResolutionScope.NONE,
+        requiresProject = true)
+public class StartMojo extends AbstractDeployerMojo {
+
+    @Parameter(property = "dockerunit-deployer.readyTimeout", defaultValue = "300")
+    private int readyTimeout;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        configure();
+        if (readyTimeout < 1) {
+            throw new MojoExecutionException("The <readyTimeout> must be at least 1 second.");
+        }
+
+        try {
+            SvcClassLoadingManager.initialiseClassLoader(resolveClasspath());
+            SvcClassLoadingManager.setStacks(getStacks());
+        } catch (Exception e) {
+            throw new MojoExecutionException("Could not initialise class loader.", e);
+        }
+
+        try {
+            ServiceContext svcContext = new HeadlessDeployer().start(readyTimeout, TimeUnit.SECONDS);
+            getLog().info(String.format("Started %d services.", svcContext.getServices().size()));
+        } catch (TimeoutException e) {
+            throw new MojoFailureException(String.format("Services were not discovered within %d seconds.", readyTimeout), e);
+        } catch (RuntimeException e) {
+            throw new MojoFailureException("Could not start services: " + e.getMessage(), e);
+        }
+    }
+
+}
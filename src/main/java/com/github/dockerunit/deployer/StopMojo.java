@@ -0,0 +1,35 @@
+package com.github.dockerunit.deployer;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+/**
+ * Stops the services that have been started by the start goal.
+ */
+@Mojo(name = "stop", defaultPhase = LifecyclePhase.POST_INTEGRATION_TEST,
+        requiresDependencyResolution = ResolutionScope.NONE,
+        requiresProject = true)
+public class StopMojo extends AbstractDeployerMojo {
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        configure();
+
+        try {
+            SvcClassLoadingManager.initialiseClassLoader(resolveClasspath());
+            SvcClassLoadingManager.setStacks(getStacks());
+        } catch (Exception e) {
+            throw new MojoExecutionException("Could not initialise class loader.", e);
+        }
+
+        try {
+            new HeadlessDeployer().stop();
+        } catch (RuntimeException e) {
+            throw new MojoFailureException("Could not stop services: " + e.getMessage(), e);
+        }
+    }
+
+}
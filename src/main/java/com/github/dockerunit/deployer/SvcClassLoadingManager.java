@@ -1,15 +1,43 @@
 package com.github.dockerunit.deployer;
 
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
 import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
+/**
+ * Loads the Dockerunit classes of the stacks from the project class path.
+ * Every stack is a Dockerunit class identified by a name. Classes are only loaded the first time they are needed.
+ * The directories of the class path can be reloaded: the directories that have changed are loaded again by a child-first
+ * class loader, while the dependencies stay loaded by the initial one.
+ */
 public class SvcClassLoadingManager {
 
-    private static Class<?> svcClass;
+    public static final String DEFAULT_STACK = "default";
+
+    private static final Map<String, String> stackClassNames = new LinkedHashMap<>();
+    private static final Map<String, Class<?>> stackClasses = new HashMap<>();
     private static URLClassLoader classLoader;
+    private static URLClassLoader initialClassLoader;
+    private static final Map<Path, Long> directoryLoadTimes = new LinkedHashMap<>();
+    private static final Set<Path> reloadedDirectories = new LinkedHashSet<>();
 
     public static synchronized void initialiseClassLoader(List<String> runtimeClasspathElements)
             throws MalformedURLException {
@@ -21,19 +49,212 @@ public class SvcClassLoadingManager {
         }
         classLoader = new URLClassLoader(runtimeUrls,
                 Thread.currentThread().getContextClassLoader());
+        initialClassLoader = classLoader;
+
+        // Directories are only walked on reload, to keep them out of the startup path
+        long now = System.currentTimeMillis();
+        directoryLoadTimes.clear();
+        reloadedDirectories.clear();
+        runtimeClasspathElements.stream()
+                .map(element -> new File(element).toPath())
+                .filter(Files::isDirectory)
+                .forEach(dir -> directoryLoadTimes.put(dir, now));
+    }
+
+    /**
+     * @return the directories of the class path, which can be reloaded
+     */
+    public static synchronized List<Path> getReloadableDirectories() {
+        return new ArrayList<>(directoryLoadTimes.keySet());
+    }
+
+    /**
+     * Creates a new class loader for the class path directories that have changed since they were last loaded,
+     * without using it yet: the current loader stays in place until the reload is committed, so that a reload
+     * whose classes cannot be used is found again by the next one.
+     *
+     * @return the reload, without any changed directory if nothing has changed
+     */
+    public static synchronized Reload prepareReload() throws MalformedURLException {
+        long now = System.currentTimeMillis();
+        List<Path> changed = new ArrayList<>();
+        directoryLoadTimes.forEach((dir, loadedAt) -> {
+            if (lastModified(dir) >= loadedAt) {
+                changed.add(dir);
+            }
+        });
+        if (changed.isEmpty()) {
+            return new Reload(changed, null, now);
+        }
+
+        // Directories changed by a previous reload are loaded again as well, as the new loader replaces the previous one
+        Set<Path> directories = new LinkedHashSet<>(reloadedDirectories);
+        directories.addAll(changed);
+        URL[] urls = new URL[directories.size()];
+        int i = 0;
+        for (Path dir : directories) {
+            urls[i++] = dir.toUri().toURL();
+        }
+        return new Reload(changed, new ChildFirstClassLoader(urls, initialClassLoader), now);
+    }
+
+    /**
+     * Replaces the class loader with the one of the reload, once the classes it loads have been used successfully.
+     */
+    public static synchronized void commit(Reload reload) {
+        if (reload.getClassLoader() == null) {
+            return;
+        }
+        reload.getChangedDirectories().forEach(dir -> directoryLoadTimes.put(dir, reload.startedAt));
+        reloadedDirectories.addAll(reload.getChangedDirectories());
+        classLoader = reload.getClassLoader();
+        stackClasses.clear();
+        stackClasses.putAll(reload.getLoadedClasses());
+    }
+
+    /**
+     * The latest modification within the directory. Directories are included, as removing or renaming a file only
+     * changes the modification time of the directory it was in.
+     */
+    private static long lastModified(Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files
+                    .mapToLong(file -> file.toFile().lastModified())
+                    .max()
+                    .orElse(0);
+        } catch (IOException | UncheckedIOException e) {
+            return 0;
+        }
     }
 
-    public static ClassLoader getClassLoader() {
+    public static synchronized ClassLoader getClassLoader() {
         return classLoader;
     }
 
     public static synchronized Class<?> loadClass(String className) throws ClassNotFoundException {
-        svcClass = classLoader.loadClass(className);
-        return svcClass;
+        setSvcClassName(className);
+        return getSvcClass();
+    }
+
+    /**
+     * Sets the name of the service class of the default stack, replacing any other stack.
+     */
+    public static synchronized void setSvcClassName(String className) {
+        setStacks(Collections.singletonMap(DEFAULT_STACK, className));
+    }
+
+    /**
+     * Sets the service class of every stack, by stack name.
+     */
+    public static synchronized void setStacks(Map<String, String> classNames) {
+        stackClassNames.clear();
+        stackClassNames.putAll(classNames);
+        stackClasses.clear();
+    }
+
+    public static synchronized List<String> getStackNames() {
+        return new ArrayList<>(stackClassNames.keySet());
     }
 
+    public static synchronized String getStackClassName(String stack) {
+        return stackClassNames.get(stack);
+    }
+
+    /**
+     * @return the service class of the first stack
+     */
     public static synchronized Class<?> getSvcClass() {
-        return svcClass;
+        return stackClassNames.isEmpty() ? null : getSvcClass(stackClassNames.keySet().iterator().next());
+    }
+
+    public static synchronized Class<?> getSvcClass(String stack) {
+        String className = stackClassNames.get(stack);
+        if (className == null) {
+            throw new IllegalArgumentException("Unknown stack " + stack);
+        }
+        return stackClasses.computeIfAbsent(stack, s -> {
+            try {
+                return classLoader.loadClass(className);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalStateException("Could not load svc class " + className, e);
+            }
+        });
+    }
+
+    /**
+     * The class loader of the changed directories, which loads the stack classes on its own until it is committed.
+     */
+    @RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+    public static class Reload {
+
+        @Getter
+        private final List<Path> changedDirectories;
+
+        /**
+         * The new class loader, or null if nothing has changed.
+         */
+        @Getter
+        private final URLClassLoader classLoader;
+
+        private final long startedAt;
+        private final Map<String, Class<?>> classes = new HashMap<>();
+
+        public Class<?> getSvcClass(String stack) {
+            String className = getStackClassName(stack);
+            if (className == null) {
+                throw new IllegalArgumentException("Unknown stack " + stack);
+            }
+            synchronized (this) {
+                return classes.computeIfAbsent(stack, s -> {
+                    try {
+                        return classLoader.loadClass(className);
+                    } catch (ClassNotFoundException e) {
+                        throw new IllegalStateException("Could not load svc class " + className, e);
+                    }
+                });
+            }
+        }
+
+        private synchronized Map<String, Class<?>> getLoadedClasses() {
+            return new HashMap<>(classes);
+        }
+    }
+
+    /**
+     * Looks classes up in its own directories before delegating to its parent.
+     */
+    private static class ChildFirstClassLoader extends URLClassLoader {
+
+        private ChildFirstClassLoader(URL[] urls, ClassLoader parent) {
+            super(urls, parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null && !name.startsWith("java.")) {
+                    try {
+                        loaded = findClass(name);
+                    } catch (ClassNotFoundException e) {
+                        // Not in the reloaded directories
+                    }
+                }
+                if (loaded == null) {
+                    return super.loadClass(name, resolve);
+                }
+                if (resolve) {
+                    resolveClass(loaded);
+                }
+                return loaded;
+            }
+        }
+
+        @Override
+        public URL getResource(String name) {
+            URL resource = findResource(name);
+            return resource != null ? resource : super.getResource(name);
+        }
     }
 
 }
@@ -0,0 +1,298 @@
+package com.github.dockerunit.deployer;
+
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceContext;
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.core.internal.ServiceContextBuilder;
+import com.github.dockerunit.core.internal.ServiceDescriptor;
+import com.github.dockerunit.core.internal.service.DefaultServiceContext;
+import com.github.dockerunit.deployer.util.Descriptors;
+import com.github.dockerunit.deployer.util.ThreadFactories;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a number of standby containers per service, created ahead of time from the service descriptor,
+ * so that scaling up only has to perform discovery for them.
+ * Standby containers are not part of the services until they are handed out, but they are published to the
+ * {@link ServiceContextProvider} as the standby context, so that they are recorded in the session file.
+ * The pool is refilled in the background every time a container is taken. A container that is created after its
+ * pool has been evicted, or after the warm pool has been closed, is removed straight away.
+ * Every standby container remembers the descriptor it has been created from, and is removed instead of handed out
+ * once the descriptor of its service has changed, e.g. after a reload.
+ */
+public class WarmPool {
+
+    private static final Logger logger = Logger.getLogger(WarmPool.class.getSimpleName());
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 60;
+
+    private final ServiceContextBuilder contextBuilder;
+    private final ExecutorService refillExecutor;
+
+    private final Map<String, Deque<Standby>> standby = new ConcurrentHashMap<>();
+    private final Map<String, ServiceDescriptor> descriptors = new ConcurrentHashMap<>();
+    private final Map<String, AtomicBoolean> refilling = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> hits = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> misses = new ConcurrentHashMap<>();
+
+    private volatile boolean closed = false;
+    private volatile Runnable onChange = () -> {};
+
+    public WarmPool(ServiceContextBuilder contextBuilder) {
+        this.contextBuilder = contextBuilder;
+        this.refillExecutor = Executors.newFixedThreadPool(DeployerSettings.getScalingParallelism(),
+                ThreadFactories.named("dude-warm-pool"));
+    }
+
+    /**
+     * @param onChange notified every time standby containers have been added or removed
+     */
+    public void setOnChange(Runnable onChange) {
+        this.onChange = onChange;
+    }
+
+    /**
+     * Fills the pool of every service in the given context.
+     */
+    public void fill(ServiceContext context) {
+        context.getServices().forEach(this::refill);
+    }
+
+    /**
+     * Takes a standby container of the given service, if any is available.
+     *
+     * @return a context containing the standby instance, or null on a pool miss
+     */
+    public ServiceContext take(Service svc) {
+        if (DeployerSettings.getWarmPoolSize(svc.getName()) <= 0) {
+            return null;
+        }
+        String fingerprint = Descriptors.replicaFingerprint(svc.getDescriptor());
+        removeStale(svc.getName(), fingerprint);
+        Standby taken = poolOf(svc.getName()).pollFirst();
+        // A container created from the previous descriptor may have been added since the stale ones were removed
+        while (taken != null && !taken.getFingerprint().equals(fingerprint)) {
+            clear(Collections.singletonList(taken));
+            taken = poolOf(svc.getName()).pollFirst();
+        }
+        counterOf(taken == null ? misses : hits, svc.getName()).incrementAndGet();
+        if (taken != null) {
+            publish();
+        }
+        refill(svc);
+        return taken == null ? null : taken.getContext();
+    }
+
+    /**
+     * Asynchronously tops the pool of the given service up to its configured size.
+     */
+    public void refill(Service svc) {
+        int size = DeployerSettings.getWarmPoolSize(svc.getName());
+        if (size <= 0 || closed) {
+            return;
+        }
+        // The latest descriptor is used, so that the pool follows reloads and descriptor changes
+        descriptors.put(svc.getName(), svc.getDescriptor());
+        AtomicBoolean inProgress = refilling.computeIfAbsent(svc.getName(), name -> new AtomicBoolean(false));
+        if (!inProgress.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refillExecutor.submit(() -> {
+                try {
+                    Deque<Standby> pool = poolOf(svc.getName());
+                    while (!closed && !Thread.currentThread().isInterrupted()) {
+                        ServiceDescriptor sd = descriptors.get(svc.getName());
+                        if (sd == null) {
+                            // The pool has been evicted
+                            return;
+                        }
+                        String fingerprint = Descriptors.replicaFingerprint(sd);
+                        removeStale(svc.getName(), fingerprint);
+                        if (pool.size() >= size) {
+                            return;
+                        }
+                        ServiceContext ctx = contextBuilder.buildServiceContext(ServiceScaler.buildDeltaDescriptor(
+                                sd, 1, isRandomised(sd)));
+                        if (!ctx.checkStatus(ServiceInstance.Status.STARTED)) {
+                            logger.warning("Could not create standby container for svc " + svc.getName() + ": "
+                                    + ctx.getFormattedErrors());
+                            contextBuilder.clearContext(ctx);
+                            return;
+                        }
+                        if (!add(svc.getName(), pool, new Standby(ctx, fingerprint))) {
+                            contextBuilder.clearContext(ctx);
+                            return;
+                        }
+                        publish();
+                    }
+                } finally {
+                    inProgress.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // The warm pool has been closed
+            inProgress.set(false);
+        }
+    }
+
+    /**
+     * Adds the container to the pool, unless the pool has been evicted since the refill started.
+     */
+    private synchronized boolean add(String svcName, Deque<Standby> pool, Standby container) {
+        if (closed || standby.get(svcName) != pool) {
+            return false;
+        }
+        pool.addLast(container);
+        return true;
+    }
+
+    /**
+     * Removes the standby containers of the service that have not been created from the descriptor with the given
+     * fingerprint.
+     */
+    private void removeStale(String svcName, String fingerprint) {
+        Deque<Standby> pool = standby.get(svcName);
+        if (pool == null) {
+            return;
+        }
+        List<Standby> stale = new ArrayList<>();
+        for (Standby container : pool) {
+            if (!container.getFingerprint().equals(fingerprint) && pool.removeFirstOccurrence(container)) {
+                stale.add(container);
+            }
+        }
+        if (!stale.isEmpty()) {
+            logger.info("Removing " + stale.size() + " standby containers of svc " + svcName
+                    + " created from a previous descriptor");
+            clear(stale);
+        }
+    }
+
+    private void clear(List<Standby> containers) {
+        Set<Service> services = containers.stream()
+                .flatMap(container -> container.getContext().getServices().stream())
+                .collect(Collectors.toSet());
+        contextBuilder.clearContext(new DefaultServiceContext(services));
+        publish();
+    }
+
+    /**
+     * Removes all the standby containers of every service.
+     */
+    public void evictAll() {
+        new ArrayList<>(standby.keySet()).forEach(this::evict);
+    }
+
+    public void evict(String svcName) {
+        Deque<Standby> pool;
+        synchronized (this) {
+            pool = standby.remove(svcName);
+            descriptors.remove(svcName);
+        }
+        if (pool == null || pool.isEmpty()) {
+            return;
+        }
+        clear(new ArrayList<>(pool));
+    }
+
+    /**
+     * Stops refilling the pools, waiting for the containers being created to be added or removed.
+     * The standby containers are kept, and stay recorded in the session file.
+     */
+    public void close() {
+        closed = true;
+        refillExecutor.shutdown();
+        try {
+            refillExecutor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true if there are no standby containers
+     */
+    public boolean isEmpty() {
+        return standby.values().stream().allMatch(Deque::isEmpty);
+    }
+
+    public List<PoolStats> getStats() {
+        Set<String> names = new HashSet<>(standby.keySet());
+        names.addAll(hits.keySet());
+        names.addAll(misses.keySet());
+        List<PoolStats> stats = names.stream()
+                .sorted()
+                .map(name -> new PoolStats(name,
+                        DeployerSettings.getWarmPoolSize(name),
+                        standby.getOrDefault(name, new ConcurrentLinkedDeque<>()).size(),
+                        counterOf(hits, name).get(),
+                        counterOf(misses, name).get()))
+                .collect(Collectors.toList());
+        return Collections.unmodifiableList(stats);
+    }
+
+    private boolean isRandomised(ServiceDescriptor sd) {
+        return sd.getContainerName() != null && !sd.getContainerName().isEmpty();
+    }
+
+    private void publish() {
+        Map<String, Service> services = new HashMap<>();
+        standby.values().stream()
+                .flatMap(Deque::stream)
+                .flatMap(container -> container.getContext().getServices().stream())
+                .forEach(svc -> services.merge(svc.getName(), svc, (s1, s2) -> {
+                    Set<ServiceInstance> instances = new HashSet<>(s1.getInstances());
+                    instances.addAll(s2.getInstances());
+                    return s1.withInstances(instances);
+                }));
+        ServiceContextProvider.setStandbyContext(new DefaultServiceContext(new HashSet<>(services.values())));
+        onChange.run();
+    }
+
+    private Deque<Standby> poolOf(String svcName) {
+        return standby.computeIfAbsent(svcName, name -> new ConcurrentLinkedDeque<>());
+    }
+
+    private AtomicLong counterOf(Map<String, AtomicLong> counters, String svcName) {
+        return counters.computeIfAbsent(svcName, name -> new AtomicLong(0));
+    }
+
+    /**
+     * A standby container, with the replica fingerprint of the descriptor it has been created from.
+     */
+    @Value
+    private static class Standby {
+        private final ServiceContext context;
+        private final String fingerprint;
+    }
+
+    @Value
+    public static class PoolStats {
+        private final String svcName;
+        private final int size;
+        private final int available;
+        private final long hits;
+        private final long misses;
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.github.dockerunit.deployer.autoscale;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Lets the {@link Autoscaler} scale a service between {@link #min()} and {@link #max()} replicas, so that the average
+ * usage of its replicas stays close to the targets.
+ * Declare it on the Dockerunit class of the stack, next to {@code @WithSvc}, once per autoscaled service.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Repeatable(Autoscales.class)
+public @interface Autoscale {
+
+    /**
+     * @return the name of the service
+     */
+    String svc();
+
+    int min() default 1;
+
+    int max();
+
+    /**
+     * @return the CPU usage to aim for, in percent of one CPU as shown by {@code docker stats}, or 0 to ignore CPU
+     */
+    int targetCpu() default 70;
+
+    /**
+     * @return the memory usage to aim for, in percent of the memory limit of the containers, or 0 to ignore memory
+     */
+    int targetMemory() default 0;
+
+}
@@ -0,0 +1,121 @@
+package com.github.dockerunit.deployer.autoscale;
+
+import com.github.dockerunit.deployer.DeployerSettings;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The replica bounds and usage targets of an autoscaled service.
+ */
+@Value
+public class AutoscalePolicy {
+
+    // Usage within 10% of the target does not trigger scaling, so that replicas do not flap around it
+    private static final double TOLERANCE = 0.1;
+    // Absorbs the rounding errors of the ratios, so that an exact number of replicas is not rounded up
+    private static final double EPSILON = 1e-9;
+
+    private final String stack;
+    private final String svcName;
+    private final int min;
+    private final int max;
+    private final int targetCpu;
+    private final int targetMemory;
+
+    public static AutoscalePolicy of(String stack, Autoscale autoscale) {
+        if (autoscale.min() < 1) {
+            throw new IllegalArgumentException("Svc " + autoscale.svc() + " cannot be autoscaled below 1 replica, got min "
+                    + autoscale.min());
+        }
+        if (autoscale.max() < autoscale.min()) {
+            throw new IllegalArgumentException("The max replicas of svc " + autoscale.svc()
+                    + " cannot be lower than the min, got " + autoscale.min() + "-" + autoscale.max());
+        }
+        if (autoscale.targetCpu() < 0 || autoscale.targetMemory() < 0
+                || autoscale.targetCpu() == 0 && autoscale.targetMemory() == 0) {
+            throw new IllegalArgumentException("Svc " + autoscale.svc() + " needs a positive CPU or memory target.");
+        }
+        return new AutoscalePolicy(stack, autoscale.svc(), autoscale.min(), autoscale.max(),
+                autoscale.targetCpu(), autoscale.targetMemory());
+    }
+
+    /**
+     * @return the policies declared on the Dockerunit class of the stack
+     */
+    public static List<AutoscalePolicy> of(String stack, Class<?> svcClass) {
+        return Arrays.stream(svcClass.getAnnotationsByType(Autoscale.class))
+                .map(autoscale -> of(stack, autoscale))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return the max replicas, capped by {@code maxReplicas}
+     */
+    public int getEffectiveMax() {
+        return Math.min(max, DeployerSettings.getMaxReplicas());
+    }
+
+    /**
+     * Proposes the replicas that bring the average usage back to the targets, assuming the load is spread evenly
+     * across the replicas. The most loaded resource decides.
+     *
+     * @param replicas the healthy replicas, which are the ones taking load
+     *
+     * @param cpu    the average CPU usage of the replicas, or null if it has not been sampled yet
+     * @param memory the average memory usage of the replicas, or null if it has not been sampled yet
+     */
+    public Proposal propose(int replicas, Double cpu, Double memory) {
+        int effectiveMax = getEffectiveMax();
+        if (replicas < min) {
+            return new Proposal(min, String.format("below the minimum of %d replicas", min));
+        }
+        if (replicas > effectiveMax) {
+            return new Proposal(effectiveMax, String.format("above the maximum of %d replicas", effectiveMax));
+        }
+        if (cpu == null || memory == null) {
+            return new Proposal(replicas, "waiting for stats");
+        }
+
+        List<String> usage = new ArrayList<>();
+        double ratio = 0;
+        if (targetCpu > 0) {
+            ratio = Math.max(ratio, cpu / targetCpu);
+            usage.add(String.format("cpu %.0f%%/%d%%", cpu, targetCpu));
+        }
+        if (targetMemory > 0) {
+            ratio = Math.max(ratio, memory / targetMemory);
+            usage.add(String.format("memory %.0f%%/%d%%", memory, targetMemory));
+        }
+        String reason = String.join(", ", usage);
+        if (Math.abs(ratio - 1) <= TOLERANCE) {
+            return new Proposal(replicas, reason + ", on target");
+        }
+
+        // Scaling down stops at the fewest replicas that keep the usage within the tolerance, so that removing
+        // replicas does not push the usage over the target and trigger a scale up
+        double needed = ratio > 1 ? replicas * ratio : replicas * ratio / (1 + TOLERANCE);
+        int desired = (int) Math.ceil(needed - EPSILON);
+        int bounded = Math.max(min, Math.min(effectiveMax, desired));
+        if (bounded == replicas && desired > effectiveMax) {
+            return new Proposal(replicas, reason + ", at the maximum");
+        }
+        if (bounded == replicas && desired < min) {
+            return new Proposal(replicas, reason + ", at the minimum");
+        }
+        if (bounded == replicas) {
+            return new Proposal(replicas, reason + ", fewer replicas would exceed the target");
+        }
+        return new Proposal(bounded, reason);
+    }
+
+    @Value
+    public static class Proposal {
+        private final int replicas;
+        private final String reason;
+    }
+
+}
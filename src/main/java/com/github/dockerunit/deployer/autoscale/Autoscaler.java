@@ -0,0 +1,374 @@
+package com.github.dockerunit.deployer.autoscale;
+
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.core.discovery.DiscoveryProvider;
+import com.github.dockerunit.core.internal.ServiceContextBuilder;
+import com.github.dockerunit.deployer.DeployerSettings;
+import com.github.dockerunit.deployer.Job;
+import com.github.dockerunit.deployer.JobQueue;
+import com.github.dockerunit.deployer.ServiceContextProvider;
+import com.github.dockerunit.deployer.ServiceRegistry;
+import com.github.dockerunit.deployer.ServiceScaler;
+import com.github.dockerunit.deployer.SvcClassLoadingManager;
+import com.github.dockerunit.deployer.WarmPool;
+import com.github.dockerunit.deployer.docker.ContainerStatsSampler;
+import com.github.dockerunit.deployer.docker.ContainerStatsSampler.ContainerStats;
+import com.github.dockerunit.deployer.util.ThreadFactories;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Scales the services that have an {@link Autoscale} policy, so that their replicas follow the load.
+ * Every {@code autoscaleInterval} seconds the average CPU and memory usage of the running replicas, as streamed by
+ * the {@link ContainerStatsSampler}, is compared with the targets of the policy. Replicas are added and removed by the
+ * {@link ServiceScaler} in jobs of the {@link JobQueue}, so they never overlap with the other jobs on the service.
+ * Once a service has been scaled, it is not scaled up again for {@code scaleUpCooldown} seconds, nor down for
+ * {@code scaleDownCooldown} seconds, unless it is outside the bounds of its policy.
+ */
+@RequiredArgsConstructor
+public class Autoscaler {
+
+    private static final Logger logger = Logger.getLogger(Autoscaler.class.getSimpleName());
+
+    private static final int MAX_BACKOFF_FACTOR = 32;
+
+    private static final int MAX_DECISIONS = 50;
+
+    private final ServiceContextBuilder contextBuilder;
+    private final DiscoveryProvider discoveryProvider;
+    private final WarmPool warmPool;
+    private final JobQueue jobQueue;
+
+    private final ContainerStatsSampler sampler = new ContainerStatsSampler();
+
+    // Only accessed by the autoscaler thread
+    private final Map<String, Job> jobs = new HashMap<>();
+    private final Set<String> reportedErrors = new HashSet<>();
+    private int evaluationErrors = 0;
+
+    private final Map<String, Long> lastScaledAt = new ConcurrentHashMap<>();
+    private final Deque<Decision> decisions = new ArrayDeque<>();
+    private volatile List<Evaluation> evaluations = Collections.emptyList();
+    private volatile boolean paused = false;
+
+    private ScheduledExecutorService scheduler;
+    private volatile Runnable onChange;
+
+    /**
+     * Starts evaluating the policies every {@code autoscaleInterval} seconds, unless autoscaling is disabled.
+     *
+     * @param onChange notified on the job thread every time a service has been scaled
+     */
+    public synchronized void start(Runnable onChange) {
+        if (scheduler != null || DeployerSettings.getAutoscaleInterval() <= 0) {
+            return;
+        }
+        this.onChange = onChange;
+        jobs.clear();
+        reportedErrors.clear();
+        evaluationErrors = 0;
+        ScheduledThreadPoolExecutor evaluator = new ScheduledThreadPoolExecutor(1,
+                ThreadFactories.named("dude-autoscaler"));
+        // The next evaluation is dropped on stop, while the one in progress completes
+        evaluator.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        scheduler = evaluator;
+        // The first evaluation only opens the stats streams, so that samples are there by the next one
+        schedule(0);
+    }
+
+    /**
+     * Stops the autoscaler and closes the stats streams. Scaling jobs that have been submitted are left to the queue.
+     */
+    public void stop() {
+        ScheduledExecutorService stopped;
+        synchronized (this) {
+            if (scheduler == null) {
+                return;
+            }
+            stopped = scheduler;
+            stopped.shutdown();
+            scheduler = null;
+        }
+        try {
+            if (!stopped.awaitTermination(DeployerSettings.getAutoscaleInterval(), TimeUnit.SECONDS)) {
+                logger.warning("The autoscale evaluation in progress did not complete in time.");
+                stopped.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        sampler.close();
+        evaluations = Collections.emptyList();
+    }
+
+    public synchronized boolean isRunning() {
+        return scheduler != null;
+    }
+
+    /**
+     * Keeps sampling and evaluating the policies, without scaling any service until {@link #resume()} is called.
+     */
+    public void pause() {
+        paused = true;
+    }
+
+    public void resume() {
+        paused = false;
+    }
+
+    public boolean isPaused() {
+        return paused;
+    }
+
+    /**
+     * @return the outcome of the latest evaluation of every policy
+     */
+    public List<Evaluation> getEvaluations() {
+        return evaluations;
+    }
+
+    /**
+     * @return the latest scaling decisions, most recent first
+     */
+    public List<Decision> getDecisions() {
+        synchronized (decisions) {
+            return new ArrayList<>(decisions);
+        }
+    }
+
+    private synchronized void schedule(long delaySeconds) {
+        if (scheduler == null) {
+            return;
+        }
+        try {
+            scheduler.schedule(this::run, delaySeconds, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            // The autoscaler is being stopped
+        }
+    }
+
+    private void run() {
+        int interval = DeployerSettings.getAutoscaleInterval();
+        long delay = interval;
+        try {
+            evaluate();
+            evaluationErrors = 0;
+        } catch (RuntimeException e) {
+            evaluationErrors++;
+            delay = interval * Math.min(MAX_BACKOFF_FACTOR, 1L << Math.min(evaluationErrors - 1, 30));
+            logger.warning("Autoscaling failed, retrying in " + delay + "s: " + e.getMessage());
+        }
+        if (!Thread.currentThread().isInterrupted()) {
+            schedule(delay);
+        }
+    }
+
+    private void evaluate() {
+        List<AutoscalePolicy> policies = loadPolicies();
+        ServiceRegistry registry = ServiceContextProvider.getSvcRegistry();
+        Map<String, List<ServiceInstance>> running = new HashMap<>();
+        for (AutoscalePolicy policy : policies) {
+            Service svc = registry.getService(policy.getSvcName());
+            if (svc != null) {
+                running.put(svc.getName(), healthy(svc));
+            }
+        }
+        sampler.track(running.values()
+                .stream()
+                .flatMap(List::stream)
+                .map(ServiceInstance::getContainerId)
+                .collect(Collectors.toSet()));
+        jobs.values().removeIf(job -> job.getState().isFinished());
+
+        List<Evaluation> result = new ArrayList<>();
+        for (AutoscalePolicy policy : policies) {
+            Service svc = registry.getService(policy.getSvcName());
+            if (svc == null) {
+                result.add(new Evaluation(policy, 0, null, null, 0, "not running"));
+            } else {
+                result.add(evaluate(policy, svc, running.get(svc.getName())));
+            }
+        }
+        evaluations = Collections.unmodifiableList(result);
+    }
+
+    private Evaluation evaluate(AutoscalePolicy policy, Service svc, List<ServiceInstance> running) {
+        List<ContainerStats> samples = running.stream()
+                .map(si -> sampler.get(si.getContainerId()))
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .collect(Collectors.toList());
+        Double cpu = samples.isEmpty() ? null : samples.stream()
+                .mapToDouble(ContainerStats::getCpuPercent)
+                .average()
+                .getAsDouble();
+        Double memory = samples.isEmpty() ? null : samples.stream()
+                .mapToDouble(ContainerStats::getMemoryPercent)
+                .average()
+                .getAsDouble();
+
+        // Aborted replicas take no load, they are left to the health monitor
+        int replicas = running.size();
+        AutoscalePolicy.Proposal proposal = policy.propose(replicas, cpu, memory);
+        return new Evaluation(policy, replicas, cpu, memory, proposal.getReplicas(), act(policy, replicas, proposal));
+    }
+
+    /**
+     * Submits a scaling job if the proposal changes the replicas and nothing holds the service back.
+     *
+     * @return the outcome of the evaluation
+     */
+    private String act(AutoscalePolicy policy, int replicas, AutoscalePolicy.Proposal proposal) {
+        String svcName = policy.getSvcName();
+        int target = proposal.getReplicas();
+        if (target == replicas) {
+            return proposal.getReason();
+        }
+        Job pending = jobs.get(svcName);
+        if (pending != null) {
+            return String.format("%s, waiting for job %d", proposal.getReason(), pending.getId());
+        }
+        if (paused) {
+            return proposal.getReason() + ", paused";
+        }
+        boolean outOfBounds = replicas < policy.getMin() || replicas > policy.getEffectiveMax();
+        long cooldown = TimeUnit.SECONDS.toMillis(target > replicas
+                ? DeployerSettings.getScaleUpCooldown()
+                : DeployerSettings.getScaleDownCooldown());
+        long remaining = lastScaledAt.getOrDefault(svcName, 0L) + cooldown - System.currentTimeMillis();
+        if (!outOfBounds && remaining > 0) {
+            return String.format("%s, cooling down for %ds", proposal.getReason(),
+                    TimeUnit.MILLISECONDS.toSeconds(remaining + 999));
+        }
+
+        Job job = jobQueue.submit(String.format("autoscale %s %d -> %d", svcName, replicas, target), svcName,
+                j -> scale(j, svcName, target));
+        jobs.put(svcName, job);
+        lastScaledAt.put(svcName, System.currentTimeMillis());
+        record(new Decision(System.currentTimeMillis(), svcName, replicas, target, proposal.getReason(), job.getId()));
+        logger.info(String.format("Scaling svc %s from %d to %d replicas (%s) as job %d.", svcName, replicas, target,
+                proposal.getReason(), job.getId()));
+        return String.format("%s, scaling to %d as job %d", proposal.getReason(), target, job.getId());
+    }
+
+    private void record(Decision decision) {
+        synchronized (decisions) {
+            decisions.addFirst(decision);
+            while (decisions.size() > MAX_DECISIONS) {
+                decisions.removeLast();
+            }
+        }
+    }
+
+    /**
+     * Scales the service to the given replicas. Replicas that have not been discovered are removed first, and the
+     * others are deregistered before their containers are removed.
+     */
+    private void scale(Job job, String svcName, int replicas) {
+        try {
+            // The running instances are only known once the previous jobs on the service have completed
+            Service svc = ServiceContextProvider.getSvcRegistry().getService(svcName);
+            if (svc == null) {
+                job.log("Svc " + svcName + " is not running anymore.");
+                return;
+            }
+            ServiceScaler scaler = new ServiceScaler(contextBuilder, discoveryProvider, warmPool)
+                    .withCancellation(job::isCancelled);
+            List<ServiceInstance> healthy = healthy(svc);
+            int current = healthy.size();
+            if (current < replicas) {
+                job.setTotal(replicas - current);
+                scaler.scaleUp(svc, replicas - current, si -> job.progress(si.getContainerName() + " " + si.getStatus()));
+            } else if (current > replicas) {
+                List<ServiceInstance> removed = healthy
+                        .stream()
+                        .sorted(Comparator.comparing((ServiceInstance si) -> si.hasStatus(ServiceInstance.Status.DISCOVERED)))
+                        .limit(current - replicas)
+                        .collect(Collectors.toList());
+                job.setTotal(removed.size());
+                scaler.deregister(svc, removed);
+                scaler.scaleDown(svc, removed, si -> job.progress(si.getContainerName() + " removed"));
+            } else {
+                job.log("Nothing to be done.");
+                return;
+            }
+            Optional.ofNullable(onChange).ifPresent(Runnable::run);
+        } finally {
+            // Cooldowns start once the replicas are ready, as new replicas only take load from then on
+            lastScaledAt.put(svcName, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * @return the replicas of the service whose containers are running, as the aborted ones take no load
+     */
+    private static List<ServiceInstance> healthy(Service svc) {
+        return svc.getInstances()
+                .stream()
+                .filter(si -> si.getContainerId() != null)
+                .filter(si -> si.hasStatus(ServiceInstance.Status.STARTED)
+                        || si.hasStatus(ServiceInstance.Status.DISCOVERED))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Reads the policies of every stack. A service can only be autoscaled by the first policy declared for it.
+     */
+    private List<AutoscalePolicy> loadPolicies() {
+        Map<String, AutoscalePolicy> policies = new LinkedHashMap<>();
+        for (String stack : SvcClassLoadingManager.getStackNames()) {
+            try {
+                AutoscalePolicy.of(stack, SvcClassLoadingManager.getSvcClass(stack))
+                        .forEach(policy -> policies.putIfAbsent(policy.getSvcName(), policy));
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                // Reported once, as the policies are read again at every evaluation
+                if (reportedErrors.add(e.getMessage())) {
+                    logger.warning("Ignoring the autoscale policies of stack " + stack + ": " + e.getMessage());
+                }
+            }
+        }
+        return new ArrayList<>(policies.values());
+    }
+
+    @Value
+    public static class Evaluation {
+        private final AutoscalePolicy policy;
+        private final int replicas;
+        private final Double cpu;
+        private final Double memory;
+        private final int desiredReplicas;
+        private final String outcome;
+    }
+
+    @Value
+    public static class Decision {
+        private final long time;
+        private final String svcName;
+        private final int fromReplicas;
+        private final int toReplicas;
+        private final String reason;
+        private final int jobId;
+    }
+
+}
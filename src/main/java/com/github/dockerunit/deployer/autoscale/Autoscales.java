@@ -0,0 +1,17 @@
+package com.github.dockerunit.deployer.autoscale;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Holds the {@link Autoscale} policies of a Dockerunit class.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Autoscales {
+
+    Autoscale[] value();
+
+}
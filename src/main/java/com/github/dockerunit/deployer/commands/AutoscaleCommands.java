@@ -0,0 +1,85 @@
+package com.github.dockerunit.deployer.commands;
+
+import com.github.dockerunit.deployer.DeployerSettings;
+import com.github.dockerunit.deployer.autoscale.Autoscaler;
+import com.github.dockerunit.deployer.util.TableFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.table.Table;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+@ShellComponent
+public class AutoscaleCommands {
+
+    private static final int STATUS_WIDTH = 160;
+
+    private static final List<TableFactory.Column<Autoscaler.Evaluation>> EVALUATION_COLUMNS = Arrays.asList(
+            new TableFactory.Column<>("svc", e -> String.format(" %s ", e.getPolicy().getSvcName())),
+            new TableFactory.Column<>("stack", e -> String.format(" %s ", e.getPolicy().getStack())),
+            new TableFactory.Column<>("replicas", e -> String.format(" %d ", e.getReplicas())),
+            new TableFactory.Column<>("min-max", e -> String.format(" %d-%d ", e.getPolicy().getMin(), e.getPolicy().getEffectiveMax())),
+            new TableFactory.Column<>("cpu", e -> formatUsage(e.getCpu(), e.getPolicy().getTargetCpu())),
+            new TableFactory.Column<>("memory", e -> formatUsage(e.getMemory(), e.getPolicy().getTargetMemory())),
+            new TableFactory.Column<>("desired", e -> String.format(" %d ", e.getDesiredReplicas())),
+            new TableFactory.Column<>("outcome", e -> String.format(" %s ", e.getOutcome())));
+
+    private static final List<TableFactory.Column<Autoscaler.Decision>> DECISION_COLUMNS = Arrays.asList(
+            new TableFactory.Column<>("time", d -> String.format(" %s ", new SimpleDateFormat("HH:mm:ss").format(new Date(d.getTime())))),
+            new TableFactory.Column<>("svc", d -> String.format(" %s ", d.getSvcName())),
+            new TableFactory.Column<>("replicas", d -> String.format(" %d -> %d ", d.getFromReplicas(), d.getToReplicas())),
+            new TableFactory.Column<>("reason", d -> String.format(" %s ", d.getReason())),
+            new TableFactory.Column<>("job", d -> String.format(" %d ", d.getJobId())));
+
+    @Autowired
+    private Autoscaler autoscaler;
+
+    @ShellMethod(value = "Shows the autoscale policies, the latest usage of the services and the scaling decisions", key = {"autoscale status"})
+    public void status() {
+        if (!autoscaler.isRunning()) {
+            System.out.println(DeployerSettings.getAutoscaleInterval() > 0
+                    ? "The autoscaler is not running dude. It starts with the services."
+                    : "The autoscaler is disabled dude. Set autoscaleInterval to enable it.");
+            return;
+        }
+        List<Autoscaler.Evaluation> evaluations = autoscaler.getEvaluations();
+        if (evaluations.isEmpty()) {
+            System.out.println("No service has an autoscale policy dude.");
+            return;
+        }
+        System.out.println(String.format("Evaluating every %ds%s.", DeployerSettings.getAutoscaleInterval(),
+                autoscaler.isPaused() ? ", paused" : ""));
+        System.out.println(TableFactory.createTable(EVALUATION_COLUMNS, evaluations).render(STATUS_WIDTH));
+
+        List<Autoscaler.Decision> decisions = autoscaler.getDecisions();
+        if (decisions.isEmpty()) {
+            System.out.println("No service has been scaled yet.");
+            return;
+        }
+        System.out.println(TableFactory.createTable(DECISION_COLUMNS, decisions).render(STATUS_WIDTH));
+    }
+
+    @ShellMethod(value = "Stops the autoscaler from scaling the services, until it is resumed", key = {"autoscale pause"})
+    public void pause() {
+        autoscaler.pause();
+        System.out.println("Autoscaling paused dude. Replicas can be scaled by hand.");
+    }
+
+    @ShellMethod(value = "Lets the autoscaler scale the services again", key = {"autoscale resume"})
+    public void resume() {
+        autoscaler.resume();
+        System.out.println("Autoscaling resumed dude.");
+    }
+
+    private static String formatUsage(Double usage, int target) {
+        if (target == 0) {
+            return " - ";
+        }
+        return usage == null ? String.format(" ?/%d%% ", target) : String.format(" %.0f%%/%d%% ", usage, target);
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.github.dockerunit.deployer.commands;
+
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.deployer.ServiceRegistry;
+import com.github.dockerunit.deployer.commands.ListCommands.InstanceRow;
+import com.github.dockerunit.deployer.util.TableFactory;
+import lombok.RequiredArgsConstructor;
+import org.jline.utils.AttributedString;
+import org.jline.utils.AttributedStringBuilder;
+import org.jline.utils.AttributedStyle;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.github.dockerunit.deployer.commands.ListCommands.INSTANCE_COLUMNS;
+import static com.github.dockerunit.deployer.commands.ListCommands.INSTANCE_ORDERS;
+
+/**
+ * Renders the instances as terminal lines for the watch command. A row is formatted again only when its instance
+ * has been replaced in the registry.
+ */
+@RequiredArgsConstructor
+class InstanceTableView {
+
+    private static final String COLUMN_SEPARATOR = "  ";
+
+    private final String svcName;
+
+    private Map<String, FormattedRow> rows = new HashMap<>();
+
+    List<AttributedString> render(ServiceRegistry registry, int width, int height) {
+        List<InstanceRow> instances = registry.getServices()
+                .stream()
+                .filter(s -> svcName == null || svcName.equals(s.getName()))
+                .flatMap(s -> s.getInstances().stream().map(si -> new InstanceRow(s.getName(), si)))
+                .sorted(INSTANCE_ORDERS.get("svc"))
+                .collect(Collectors.toList());
+
+        Map<String, FormattedRow> formatted = new HashMap<>();
+        List<String[]> cells = new ArrayList<>(instances.size());
+        for (InstanceRow row : instances) {
+            String key = ServiceRegistry.instanceKey(row.getInstance());
+            FormattedRow cached = rows.get(key);
+            if (cached == null || cached.instance != row.getInstance()) {
+                cached = new FormattedRow(row.getInstance(), format(row));
+            }
+            formatted.put(key, cached);
+            cells.add(cached.cells);
+        }
+        rows = formatted;
+
+        String[] header = INSTANCE_COLUMNS.stream().map(TableFactory.Column::getHeader).toArray(String[]::new);
+        int[] widths = new int[header.length];
+        for (int i = 0; i < header.length; i++) {
+            widths[i] = header[i].length();
+            for (String[] row : cells) {
+                widths[i] = Math.max(widths[i], row[i].length());
+            }
+        }
+
+        List<AttributedString> lines = new ArrayList<>();
+        lines.add(new AttributedString(String.format("%d instances, press q to quit", instances.size()),
+                AttributedStyle.DEFAULT.foreground(AttributedStyle.YELLOW)));
+        lines.add(line(header, widths, width, AttributedStyle.BOLD));
+        for (String[] row : cells) {
+            if (lines.size() >= height - 1) {
+                break;
+            }
+            lines.add(line(row, widths, width, AttributedStyle.DEFAULT));
+        }
+        return lines;
+    }
+
+    private static String[] format(InstanceRow row) {
+        return INSTANCE_COLUMNS.stream()
+                .map(c -> c.getFormatter().apply(row).trim())
+                .toArray(String[]::new);
+    }
+
+    private static AttributedString line(String[] cells, int[] widths, int width, AttributedStyle style) {
+        AttributedStringBuilder builder = new AttributedStringBuilder().style(style);
+        for (int i = 0; i < cells.length; i++) {
+            builder.append(String.format("%-" + widths[i] + "s", cells[i]));
+            if (i < cells.length - 1) {
+                builder.append(COLUMN_SEPARATOR);
+            }
+        }
+        AttributedString line = builder.toAttributedString();
+        return line.columnLength() > width ? line.columnSubSequence(0, width) : line;
+    }
+
+    @RequiredArgsConstructor
+    private static final class FormattedRow {
+        private final ServiceInstance instance;
+        private final String[] cells;
+    }
+
+}
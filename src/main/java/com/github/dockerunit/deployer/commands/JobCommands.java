@@ -0,0 +1,52 @@
+package com.github.dockerunit.deployer.commands;
+
+import com.github.dockerunit.deployer.Job;
+import com.github.dockerunit.deployer.JobQueue;
+import com.github.dockerunit.deployer.util.TableFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+import org.springframework.shell.table.Table;
+
+import java.util.Arrays;
+import java.util.List;
+
+@ShellComponent
+public class JobCommands {
+
+    private static final List<TableFactory.Column<Job>> JOB_COLUMNS = Arrays.asList(
+            new TableFactory.Column<>("id", job -> String.format(" %d ", job.getId())),
+            new TableFactory.Column<>("job", job -> String.format(" %s ", job.getDescription())),
+            new TableFactory.Column<>("state", job -> String.format(" %s ", job.getState())),
+            new TableFactory.Column<>("progress", job -> String.format(" %s ", job.getProgress())),
+            new TableFactory.Column<>("elapsed", job -> String.format(" %.1fs ", job.getElapsedMillis() / 1000.0)),
+            new TableFactory.Column<>("message", job -> String.format(" %s ", job.getMessage())));
+
+    @Autowired
+    private JobQueue jobQueue;
+
+    @ShellMethod(value = "Lists the lifecycle jobs and their progress", key = {"jobs"})
+    public Table jobs() {
+        return TableFactory.createTable(JOB_COLUMNS, jobQueue.getJobs());
+    }
+
+    @ShellMethod(value = "Cancels a lifecycle job. Containers that have already been created are kept for cleanup.", key = {"cancel"})
+    public void cancel(@ShellOption(defaultValue = ShellOption.NULL) Integer id,
+                       @ShellOption(value = "--all", help = "Cancels every job that has not finished") boolean all) {
+        if (all) {
+            System.out.println(String.format("Cancelled %d jobs dude.", jobQueue.cancelAll().size()));
+            return;
+        }
+        if (id == null) {
+            System.out.println("Tell me which job to cancel dude, or use --all.");
+            return;
+        }
+        if (jobQueue.cancel(id)) {
+            System.out.println(String.format("Cancelling job %d. Replicas in progress will be completed first.", id));
+        } else {
+            System.out.println(String.format("Job %d is not running dude.", id));
+        }
+    }
+
+}
@@ -7,16 +7,38 @@ import com.github.dockerunit.core.discovery.DiscoveryProvider;
 import com.github.dockerunit.core.internal.ServiceContextBuilder;
 import com.github.dockerunit.core.internal.ServiceDescriptor;
 import com.github.dockerunit.core.internal.UsageDescriptor;
-import com.github.dockerunit.core.internal.reflect.DefaultServiceDescriptor;
 import com.github.dockerunit.core.internal.reflect.UsageDescriptorBuilder;
 import com.github.dockerunit.core.internal.service.DefaultServiceContext;
+import com.github.dockerunit.deployer.ClassDirectoryWatcher;
+import com.github.dockerunit.deployer.ContainerReuseCache;
+import com.github.dockerunit.deployer.ContainerTeardown;
+import com.github.dockerunit.deployer.DeployerSettings;
+import com.github.dockerunit.deployer.DescriptorDiff;
 import com.github.dockerunit.deployer.DockerUnitSetup;
+import com.github.dockerunit.deployer.HealthMonitor;
+import com.github.dockerunit.deployer.Job;
+import com.github.dockerunit.deployer.JobQueue;
 import com.github.dockerunit.deployer.ServiceContextProvider;
+import com.github.dockerunit.deployer.ServiceRegistry;
+import com.github.dockerunit.deployer.ServiceScaler;
+import com.github.dockerunit.deployer.SessionStore;
+import com.github.dockerunit.deployer.StackRegistry;
 import com.github.dockerunit.deployer.SvcClassLoadingManager;
+import com.github.dockerunit.deployer.WarmPool;
+import com.github.dockerunit.deployer.autoscale.Autoscaler;
+import com.github.dockerunit.deployer.docker.DockerClients;
+import com.github.dockerunit.deployer.docker.ImagePuller;
+import com.github.dockerunit.deployer.metrics.MetricsExporter;
+import com.github.dockerunit.deployer.metrics.MetricsRegistry;
+import com.github.dockerunit.deployer.metrics.MetricsTables;
+import com.github.dockerunit.deployer.util.Descriptors;
+import com.github.dockerunit.deployer.util.StartupTimings;
 import org.hibernate.validator.constraints.NotEmpty;
 import org.jline.reader.LineReader;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.shell.ExitRequest;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
@@ -24,21 +46,28 @@ import org.springframework.shell.standard.ShellOption;
 import org.springframework.shell.standard.commands.Quit;
 
 import javax.annotation.PostConstruct;
-import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
-import java.security.SecureRandom;
-import java.util.Base64;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
-import java.util.stream.Stream;
 
 @ShellComponent
 public class LifecycleCommands implements Quit.Command {
 
+    private static final int SUMMARY_WIDTH = 120;
 
     @Autowired
     private DiscoveryProvider discoveryProvider;
@@ -49,137 +78,682 @@ public class LifecycleCommands implements Quit.Command {
     @Autowired
     private UsageDescriptorBuilder descriptorBuilder;
 
+    @Autowired
+    private WarmPool warmPool;
+
+    @Autowired
+    private SessionStore sessionStore;
+
+    @Autowired
+    private HealthMonitor healthMonitor;
+
+    @Autowired
+    private Autoscaler autoscaler;
+
+    @Autowired
+    private JobQueue jobQueue;
+
+    @Autowired
+    private ImagePuller imagePuller;
+
     @Autowired
     @Lazy
     private LineReader lineReader;
 
-    private boolean running = false;
+    private final Set<String> runningStacks = ConcurrentHashMap.newKeySet();
+
+    // Set once the line reader can be looked up, until then nothing is reading from the terminal
+    private volatile boolean shellReady = false;
+
+    // Guarded by this: the discovery provider is shared by all the stacks and started by the first one
+    private boolean discoveryRunning = false;
+    private ContainerReuseCache reuseCache;
+
+    private final ClassDirectoryWatcher classWatcher = new ClassDirectoryWatcher(this::submitReload);
+
 
+    @ShellMethod(value = "Shuts down the running services and the discovery provider, or only the services of a stack.", key = {"shutdown", "halt", "stop"})
+    public void shutdown(@ShellOption(value = "--stack", defaultValue = ShellOption.NULL,
+            help = "Only shuts down the services of this stack, leaving the discovery provider running") String stack,
+                         @ShellOption(value = "--kill", help = "Kills the containers instead of waiting for them to stop") boolean kill) {
+        boolean killContainers = kill || DeployerSettings.isKillOnShutdown();
+        if (stack != null) {
+            if (!StackRegistry.isStack(stack)) {
+                System.out.println(String.format("Could not find stack %s dude.", stack));
+                return;
+            }
+            Job job = jobQueue.submit("stop --stack " + stack, StackRegistry.getServices(stack), j -> stopStack(j, stack, killContainers));
+            System.out.println(String.format("Stopping stack %s as job %d dude.", stack, job.getId()));
+            return;
+        }
 
-    @ShellMethod(value = "Shuts down the running services and the discovery provider.", key = {"shutdown", "halt", "stop"})
-    public void shutdown() {
+        // Stopped first, so that they do not submit scaling jobs while the others are being cancelled
+        autoscaler.stop();
+        healthMonitor.stop();
+        List<Job> cancelled = jobQueue.cancelAll();
+        if (!cancelled.isEmpty()) {
+            System.out.println(String.format("Waiting for %d cancelled jobs to stop ...", cancelled.size()));
+        }
+        jobQueue.awaitAll();
+        shutdownServices(killContainers);
+    }
+
+    /**
+     * Deregisters all the instances at once and removes their containers concurrently, then removes the discovery
+     * provider. Containers that cannot be removed are reported and stay tracked, so that shutdown can be retried.
+     */
+    private void shutdownServices(boolean kill) {
+        autoscaler.stop();
+        healthMonitor.stop();
+        List<ContainerTeardown.Failure> failures = new ArrayList<>();
         ServiceContext context = ServiceContextProvider.getSvcContext();
         if (context != null) {
-            ServiceContext cleared = contextBuilder.clearContext(context);
-            ServiceContext clearedRegistryContext = discoveryProvider.clearRegistry(cleared, new DefaultServiceContext(new HashSet<>()));
-            ServiceContextProvider.setSvcContext(clearedRegistryContext);
+            ContainerTeardown.Result result = new ContainerTeardown(discoveryProvider, kill)
+                    .tearDown(context, new DefaultServiceContext(new HashSet<>()));
+            ServiceContextProvider.updateSvcRegistry(result::prune);
+            failures.addAll(result.getFailures());
+        }
+        if (DeployerSettings.isEvictWarmPoolOnShutdown()) {
+            warmPool.evictAll();
         }
 
-        stopDiscovery();
+        failures.addAll(stopDiscovery(kill));
+        if (failures.isEmpty() && warmPool.isEmpty()) {
+            sessionStore.delete();
+        } else if (failures.isEmpty()) {
+            // The standby containers that have been kept stay recorded, so that they can be removed later
+            saveState();
+        } else {
+            saveState();
+            print(String.format("Could not remove %d containers dude. Run shutdown again to retry.", failures.size()));
+            print(new ContainerTeardown.Result(Collections.emptyList(), failures)
+                    .failureTable()
+                    .render(SUMMARY_WIDTH));
+        }
 
-        running = false;
+        runningStacks.clear();
+        synchronized (this) {
+            discoveryRunning = false;
+            reuseCache = null;
+        }
+    }
+
+    /**
+     * Removes the services of the stack, deregistering them while every other stack stays registered.
+     */
+    private void stopStack(Job job, String stack, boolean kill) {
+        Set<String> svcNames = StackRegistry.getServices(stack);
+        ServiceRegistry registry = ServiceContextProvider.getSvcRegistry();
+        Set<Service> services = svcNames.stream()
+                .map(registry::getService)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        ServiceRegistry remaining = registry;
+        for (String svcName : svcNames) {
+            remaining = remaining.withoutService(svcName);
+        }
+
+        ContainerTeardown.Result result = new ContainerTeardown(discoveryProvider, kill)
+                .tearDown(new DefaultServiceContext(services), remaining.toContext());
+        ServiceContextProvider.updateSvcRegistry(result::prune);
+        if (DeployerSettings.isEvictWarmPoolOnShutdown()) {
+            svcNames.forEach(warmPool::evict);
+        }
+        runningStacks.remove(stack);
+        saveState();
+        if (!result.isComplete()) {
+            print(result.failureTable().render(SUMMARY_WIDTH));
+            throw new RuntimeException(String.format("Could not remove %d containers of stack %s.",
+                    result.getFailures().size(), stack));
+        }
+        job.log(String.format("Stack %s has been stopped.", stack));
     }
 
-    @ShellMethod(value = "Starts the discovery provider and the services.", key = {"start", "run"})
     @PostConstruct
-    public void start() {
-        Thread.currentThread().setContextClassLoader(SvcClassLoadingManager.getClassLoader());
-        if (running) {
+    public void init() {
+        StartupTimings.phase("spring-context");
+        warmPool.setOnChange(() -> sessionStore.save(ServiceContextProvider.getSnapshot()));
+        jobQueue.setOnFinished(this::reportJob);
+        if (!DeployerSettings.isAttach() || !tryAttach()) {
+            start(null);
+        }
+        if (DeployerSettings.isReloadOnChange()) {
+            watchClasses();
+        }
+        StartupTimings.phase("services");
+    }
+
+    @EventListener(ContextRefreshedEvent.class)
+    public void onContextRefreshed() {
+        shellReady = true;
+    }
+
+    @ShellMethod(value = "Attaches to the containers of the previous session.", key = {"attach"})
+    public void attach() {
+        if (!runningStacks.isEmpty()) {
             System.out.println("Already running dude.");
             return;
         }
+        if (!tryAttach()) {
+            System.out.println("Could not attach dude. Use start to create new containers.");
+        }
+    }
 
-        startDiscovery();
+    /**
+     * Starts every stack, or the given one, in a background job, so that the shell is available while containers
+     * are being created. Stacks declare different services, so their jobs run in parallel.
+     */
+    @ShellMethod(value = "Starts the discovery provider and the services.", key = {"start", "run"})
+    public void start(@ShellOption(value = "--stack", defaultValue = ShellOption.NULL,
+            help = "Only starts the services of this stack") String stack) {
+        Thread.currentThread().setContextClassLoader(SvcClassLoadingManager.getClassLoader());
+        Map<String, List<ServiceDescriptor>> stacks = StackRegistry.describe(descriptorBuilder);
+        if (stack != null && !stacks.containsKey(stack)) {
+            print(String.format("Could not find stack %s dude. Available stacks are %s.", stack, stacks.keySet()));
+            return;
+        }
 
-        UsageDescriptor descriptor = descriptorBuilder.buildDescriptor(SvcClassLoadingManager.getSvcClass());
-        ServiceContext svcContext = new DockerUnitSetup(contextBuilder, discoveryProvider).setup(descriptor);
-        ServiceContextProvider.setSvcContext(svcContext);
+        List<String> toBeStarted = (stack == null ? new ArrayList<>(stacks.keySet()) : Collections.singletonList(stack))
+                .stream()
+                .filter(name -> !runningStacks.contains(name))
+                .collect(Collectors.toList());
+        if (toBeStarted.isEmpty()) {
+            print("Already running dude.");
+            return;
+        }
+        for (String name : toBeStarted) {
+            Job job = jobQueue.submit("start --stack " + name, StackRegistry.getServices(name), j -> startStack(j, name));
+            print(String.format("Starting stack %s as job %d. Use jobs to follow it dude.", name, job.getId()));
+        }
+    }
+
+    private void startStack(Job job, String stack) {
+        Thread.currentThread().setContextClassLoader(SvcClassLoadingManager.getClassLoader());
+        if (runningStacks.contains(stack)) {
+            job.log("Already running.");
+            return;
+        }
+        ServiceRegistry registry = ServiceContextProvider.getSvcRegistry();
+        boolean tracked = StackRegistry.getServices(stack)
+                .stream()
+                .map(registry::getService)
+                .filter(Objects::nonNull)
+                .flatMap(svc -> svc.getInstances().stream())
+                .anyMatch(si -> si.hasStatus(ServiceInstance.Status.STARTED) || si.hasStatus(ServiceInstance.Status.DISCOVERED));
+        if (tracked) {
+            throw new RuntimeException("Containers of a previous start of stack " + stack + " are still running. Shut them down first.");
+        }
+
+        List<ServiceDescriptor> usages = StackRegistry.describe(descriptorBuilder).get(stack);
+        if (DeployerSettings.isPrePullImages()) {
+            prePullImages(job, usages);
+        }
+        ContainerReuseCache cache = ensureDiscovery();
+        if (job.isCancelled()) {
+            return;
+        }
+
+        // Every service is published as soon as it has been processed, so that a cancelled start leaves
+        // the containers created so far tracked for shutdown
+        job.setTotal(usages.size());
+        ServiceContext svcContext;
+        try {
+            svcContext = MetricsRegistry.time(MetricsRegistry.SETUP, stack,
+                    () -> new DockerUnitSetup(contextBuilder, discoveryProvider, cache)
+                            .withCancellation(job::isCancelled)
+                            .withListener(ctx -> {
+                                ServiceContextProvider.updateSvcRegistry(current -> current.merge(ctx));
+                                job.progress("Processed svc " + ctx.getServices().iterator().next().getName());
+                            })
+                            .setup(usages));
+        } finally {
+            // The services published so far are recorded even if the setup failed
+            saveState();
+        }
+        ServiceContextProvider.updateSvcRegistry(current -> current.merge(svcContext));
+        saveState();
+        if (job.isCancelled()) {
+            job.log("Use shutdown to remove the containers created so far.");
+            return;
+        }
+        print(MetricsTables.startupSummary().render(SUMMARY_WIDTH));
         if (!svcContext.checkStatus(ServiceInstance.Status.DISCOVERED)) {
             throw new RuntimeException(svcContext.getFormattedErrors());
         }
+        warmPool.fill(svcContext);
+
+        runningStacks.add(stack);
+        startMonitors();
+    }
+
+    /**
+     * Pulls the missing images of the stack and of the discovery provider, so that containers are only created
+     * once every image is available.
+     */
+    private void prePullImages(Job job, List<ServiceDescriptor> usages) {
+        Set<String> images = usages.stream()
+                .map(Descriptors::image)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        descriptorBuilder.buildDescriptor(discoveryProvider.getDiscoveryConfig())
+                .getUsages()
+                .forEach(sd -> images.add(Descriptors.image(sd)));
+        job.log("Pulling missing images.");
+        int pulled = imagePuller.pull(images, job::log, job::isCancelled);
+        job.log(String.format("Pulled %d images.", pulled));
+    }
+
+    /**
+     * Starts the discovery provider, or adopts the one of the previous session, unless it is already running.
+     * The containers of the previous session are prepared for reuse for all the stacks at once, as the containers
+     * of the services that are not declared by any stack are removed.
+     *
+     * @return the containers that can be reused, or null
+     */
+    private synchronized ContainerReuseCache ensureDiscovery() {
+        if (discoveryRunning) {
+            return reuseCache;
+        }
+        Optional<SessionStore.Session> session = DeployerSettings.isReuseContainers()
+                ? sessionStore.load()
+                : Optional.empty();
+        session.ifPresent(this::removeStandby);
+        if (!session.isPresent() || !adoptDiscovery(session.get())) {
+            startDiscovery();
+        }
+        reuseCache = session
+                .map(s -> ContainerReuseCache.prepare(s, StackRegistry.allUsages(descriptorBuilder), contextBuilder))
+                .orElse(null);
+        discoveryRunning = true;
+        return reuseCache;
+    }
+
+    /**
+     * Removes the standby containers of the previous session, as the warm pool is filled again from scratch.
+     */
+    private void removeStandby(SessionStore.Session session) {
+        if (session.getStandbyServices().isEmpty()) {
+            return;
+        }
+        ContainerTeardown.Result result = new ContainerTeardown(null, true).tearDown(session.toStandbyContext(), null);
+        if (!result.isComplete()) {
+            print(String.format("Could not remove %d standby containers of the previous session dude.",
+                    result.getFailures().size()));
+        }
+    }
+
+    private boolean adoptDiscovery(SessionStore.Session session) {
+        ServiceContext discoveryContext = session.toDiscoveryContext(
+                descriptorBuilder.buildDescriptor(discoveryProvider.getDiscoveryConfig()));
+        if (discoveryContext == null || discoveryContext.getServices().isEmpty()) {
+            return false;
+        }
+        boolean allRunning = discoveryContext.getServices()
+                .stream()
+                .flatMap(svc -> svc.getInstances().stream())
+                .allMatch(si -> DockerClients.isRunning(si.getContainerId()));
+        if (!allRunning) {
+            contextBuilder.clearContext(discoveryContext);
+            return false;
+        }
+        ServiceContextProvider.setDiscoveryContext(discoveryContext);
+        return true;
+    }
+
+    private boolean tryAttach() {
+        Thread.currentThread().setContextClassLoader(SvcClassLoadingManager.getClassLoader());
+        Optional<SessionStore.Session> session = sessionStore.load();
+        if (!session.isPresent()) {
+            System.out.println(String.format("No previous session found in %s dude.", sessionStore.getFile()));
+            return false;
+        }
+
+        ServiceContext svcContext = session.get().toSvcContext(StackRegistry.allUsages(descriptorBuilder));
+        ServiceContext discoveryContext = session.get().toDiscoveryContext(
+                descriptorBuilder.buildDescriptor(discoveryProvider.getDiscoveryConfig()));
+        if (svcContext == null || discoveryContext == null || discoveryContext.getServices().isEmpty()) {
+            System.out.println("The previous session does not match the current services dude.");
+            return false;
+        }
+
+        List<String> notRunning = session.get().getContainerIds()
+                .parallelStream()
+                .filter(id -> !DockerClients.isRunning(id))
+                .collect(Collectors.toList());
+        if (!notRunning.isEmpty()) {
+            System.out.println(String.format("%d containers of the previous session are not running anymore dude.",
+                    notRunning.size()));
+            return false;
+        }
 
-        running = true;
+        removeStandby(session.get());
+        ServiceContextProvider.setDiscoveryContext(discoveryContext);
+        ServiceContextProvider.setSvcContext(svcContext);
+        warmPool.fill(svcContext);
+        System.out.println(String.format("Attached to %d containers of the previous session.",
+                session.get().getContainerIds().size()));
+        synchronized (this) {
+            discoveryRunning = true;
+        }
+        // Stacks whose services are all in the session are running
+        StackRegistry.getStacks()
+                .stream()
+                .filter(stack -> StackRegistry.getServices(stack).stream().allMatch(svc -> svcContext.getService(svc) != null))
+                .forEach(runningStacks::add);
+        startMonitors();
+        return true;
+    }
+
+    private void startMonitors() {
+        healthMonitor.start(() -> sessionStore.save(ServiceContextProvider.getSnapshot()));
+        autoscaler.start(() -> sessionStore.save(ServiceContextProvider.getSnapshot()));
+    }
+
+    private void saveState() {
+        sessionStore.save(ServiceContextProvider.getSnapshot());
+        MetricsExporter.dump(DeployerSettings.getMetricsDirectory());
     }
 
     private void startDiscovery() {
         UsageDescriptor discoveryProviderDescriptor = descriptorBuilder.buildDescriptor(discoveryProvider.getDiscoveryConfig());
 
-        ServiceContext discoveryContext = contextBuilder.buildContext(discoveryProviderDescriptor);
+        ServiceContext discoveryContext = MetricsRegistry.time(MetricsRegistry.DISCOVERY_PROVIDER_BOOT, null,
+                () -> contextBuilder.buildContext(discoveryProviderDescriptor));
         ServiceContextProvider.setDiscoveryContext(discoveryContext);
+        saveState();
         if (!discoveryContext.checkStatus(ServiceInstance.Status.STARTED)) {
             throw new RuntimeException(discoveryContext.getFormattedErrors());
         }
     }
 
-    @ShellMethod(value = "Restarts all services and the discovery provider.", key = {"restart", "reboot"})
-    public void restart(@ShellOption(value = "--svc", defaultValue = ShellOption.NULL) String svc) {
+    @ShellMethod(value = "Restarts all services and the discovery provider, or only the specified service.", key = {"restart", "reboot"})
+    public void restart(@ShellOption(value = "--svc", defaultValue = ShellOption.NULL) String svc,
+                        @ShellOption(value = "--rolling", help = "Replaces one replica at a time") boolean rolling) {
         if (svc == null) {
-            System.out.println("Shutting down all services...");
-            shutdown();
-            System.out.println("Restarting all services...");
-            start();
+            Job job = jobQueue.submitForAll("restart", j -> {
+                j.log("Shutting down all services.");
+                shutdownServices(DeployerSettings.isKillOnShutdown());
+                j.log("Restarting all services.");
+                // The start jobs wait for this one to complete
+                start(null);
+            });
+            System.out.println(String.format("Restarting all services as job %d dude.", job.getId()));
             return;
         }
 
-        ServiceContext svcContext = ServiceContextProvider.getSvcContext();
-        Service s = svcContext.getService(svc);
-        if (s == null) {
+        if (ServiceContextProvider.getSvcRegistry().getService(svc) == null) {
             System.out.println(String.format("Could not find service %s dude.", svc));
             return;
         }
+        Job job = jobQueue.submit(String.format("restart%s %s", rolling ? " --rolling" : "", svc), svc,
+                j -> restartSvc(j, svc, rolling));
+        System.out.println(String.format("Restarting %s as job %d dude.", svc, job.getId()));
+    }
+
+    private void restartSvc(Job job, String svc, boolean rolling) {
+        // The service is looked up again, as previous jobs on the same service may have changed it
+        Service s = ServiceContextProvider.getSvcRegistry().getService(svc);
+        if (s == null) {
+            throw new RuntimeException("Could not find service " + svc + ".");
+        }
+
+        ServiceScaler scaler = new ServiceScaler(contextBuilder, discoveryProvider, warmPool)
+                .withCancellation(job::isCancelled);
+        job.setTotal(s.getInstances().size());
+        if (rolling) {
+            job.log(String.format("Rolling restart of %s.", svc));
+            MetricsRegistry.time(MetricsRegistry.RESTART, svc, () -> scaler.rollingRestart(s,
+                    si -> job.progress(si.getContainerName() + " " + si.getStatus())));
+            saveState();
+            job.log(String.format("Replaced %s of %s.", job.getProgress(), svc));
+            return;
+        }
+
+        // Only the instances of this service are deregistered, the discovery provider keeps running
+        MetricsRegistry.time(MetricsRegistry.RESTART, svc, () -> {
+            scaler.deregister(s, s.getInstances());
+            shutSvcDown(s);
+            startSvc(ServiceScaler.buildDeltaDescriptor(s.getDescriptor(), s.getInstances().size(), false));
+        });
+        saveState();
+    }
+
+    @ShellMethod(value = "Reloads the service classes and applies the changed descriptors to the running stacks.", key = {"reload"})
+    public void reload(@ShellOption(value = "--watch", help = "Reloads automatically every time the classes change") boolean watch,
+                       @ShellOption(value = "--unwatch", help = "Stops reloading automatically") boolean unwatch) {
+        if (unwatch) {
+            classWatcher.stop();
+            System.out.println("Stopped watching the classes dude.");
+            return;
+        }
+        if (watch) {
+            watchClasses();
+        }
+        submitReload();
+    }
+
+    private void watchClasses() {
+        try {
+            classWatcher.start(SvcClassLoadingManager.getReloadableDirectories());
+            System.out.println("Watching the classes, services are reloaded when they change dude.");
+        } catch (IOException e) {
+            System.out.println("Could not watch the classes dude: " + e.getMessage());
+        }
+    }
+
+    private void submitReload() {
+        Job job = jobQueue.submitForAll("reload", this::reloadStacks);
+        print(String.format("Reloading the service classes as job %d dude.", job.getId()));
+    }
+
+    /**
+     * Loads the changed class path directories again and applies the differences between the new descriptors
+     * and the previous ones to the running stacks. Services whose descriptors have not changed are left untouched.
+     */
+    private void reloadStacks(Job job) {
+        SvcClassLoadingManager.Reload reload;
+        try {
+            reload = SvcClassLoadingManager.prepareReload();
+        } catch (MalformedURLException e) {
+            throw new RuntimeException("Could not reload the service classes.", e);
+        }
+        if (reload.getChangedDirectories().isEmpty()) {
+            job.log("Nothing changed.");
+            return;
+        }
 
-        shutSvcDown(s);
-        stopDiscovery();
-        startDiscovery();
-        startSvc(s.getDescriptor());
+        // The new classes are only used once the descriptors have been built from them
+        Thread.currentThread().setContextClassLoader(reload.getClassLoader());
+        Map<String, List<ServiceDescriptor>> previous = StackRegistry.reload(descriptorBuilder, reload::getSvcClass);
+        SvcClassLoadingManager.commit(reload);
+        Map<String, List<ServiceDescriptor>> current = StackRegistry.describe(descriptorBuilder);
+        Map<String, DescriptorDiff> diffs = new LinkedHashMap<>();
+        current.forEach((stack, usages) -> {
+            DescriptorDiff diff = DescriptorDiff.of(previous.getOrDefault(stack, Collections.emptyList()), usages);
+            // Stacks that are not running pick the new descriptors up on start
+            if (runningStacks.contains(stack) && !diff.isEmpty()) {
+                diffs.put(stack, diff);
+            }
+        });
+        if (diffs.isEmpty()) {
+            job.log("No running service has changed.");
+            return;
+        }
 
+        job.setTotal(diffs.values()
+                .stream()
+                .mapToInt(d -> d.getAdded().size() + d.getRemoved().size() + d.getChanged().size() + d.getRescaled().size())
+                .sum());
+        ServiceScaler scaler = new ServiceScaler(contextBuilder, discoveryProvider, warmPool)
+                .withCancellation(job::isCancelled);
+        diffs.forEach((stack, diff) -> {
+            diff.getRemoved().forEach(sd -> {
+                removeSvc(scaler, Descriptors.serviceName(sd));
+                job.progress("Removed svc " + Descriptors.serviceName(sd));
+            });
+            diff.getChanged().forEach(sd -> {
+                removeSvc(scaler, Descriptors.serviceName(sd));
+                startSvc(sd);
+                job.progress("Recreated svc " + Descriptors.serviceName(sd));
+            });
+            diff.getAdded().forEach(sd -> {
+                startSvc(sd);
+                job.progress("Started svc " + Descriptors.serviceName(sd));
+            });
+            diff.getRescaled().forEach(sd -> {
+                rescaleSvc(scaler, sd);
+                job.progress("Scaled svc " + Descriptors.serviceName(sd) + " to " + sd.getReplicas() + " instances");
+            });
+            job.log(String.format("Reloaded stack %s: %d added, %d removed, %d changed, %d rescaled services.",
+                    stack, diff.getAdded().size(), diff.getRemoved().size(), diff.getChanged().size(),
+                    diff.getRescaled().size()));
+        });
+        saveState();
+    }
+
+    private void removeSvc(ServiceScaler scaler, String svcName) {
+        Service s = ServiceContextProvider.getSvcRegistry().getService(svcName);
+        if (s != null) {
+            scaler.deregister(s, s.getInstances());
+            shutSvcDown(s);
+        }
+        // Standby containers have been created from the previous descriptor
+        warmPool.evict(svcName);
+    }
+
+    /**
+     * Brings the number of instances of the service to the replicas of its new descriptor, keeping the running ones.
+     */
+    private void rescaleSvc(ServiceScaler scaler, ServiceDescriptor sd) {
+        String svcName = Descriptors.serviceName(sd);
+        if (ServiceContextProvider.getSvcRegistry().getService(svcName) == null) {
+            startSvc(sd);
+            return;
+        }
+        ServiceContextProvider.updateSvcRegistry(registry -> registry.withDescriptor(svcName, sd));
+        Service s = ServiceContextProvider.getSvcRegistry().getService(svcName);
+        int delta = sd.getReplicas() - s.getInstances().size();
+        if (delta > 0) {
+            scaler.scaleUp(s, delta, si -> {});
+        } else if (delta < 0) {
+            List<ServiceInstance> killable = s.getInstances()
+                    .stream()
+                    .limit(-delta)
+                    .collect(Collectors.toList());
+            scaler.deregister(s, killable);
+            scaler.scaleDown(s, killable, si -> {});
+        }
     }
 
     @ShellMethod(value = "Exits the DUDe shell.", key = {"exit", "quit"})
     public void quit(@ShellOption(value = {"-f", "--force"}) boolean force) {
         if (force || askYesNo("Shutdown running containers?")) {
-            shutdown();
+            shutdown(null, false);
+        } else {
+            jobQueue.cancelAll();
+            jobQueue.awaitAll();
         }
+        // Containers being added to the warm pool are recorded before the session is saved
+        warmPool.close();
+        saveState();
         throw new ExitRequest();
     }
 
     @ShellMethod(value = "Scales the specified service up/down to the desired number of replicas", key = {"scale"})
-    public void scale(@ShellOption("--replicas") @Min(value = 1, message = "You can scale services down to 1 instance")
-                      @Max(value = 10, message = "You can scale services up to 10 instances") int replicas,
+    public void scale(@ShellOption("--replicas") @Min(value = 1, message = "You can scale services down to 1 instance") int replicas,
                       @NotNull @NotEmpty String svc) {
-        ServiceContext svcContext = ServiceContextProvider.getSvcContext();
-        Service s = svcContext.getService(svc);
-        if (s == null) {
+        if (replicas > DeployerSettings.getMaxReplicas()) {
+            System.out.println(String.format("You can scale services up to %d instances dude.", DeployerSettings.getMaxReplicas()));
+            return;
+        }
+
+        if (ServiceContextProvider.getSvcRegistry().getService(svc) == null) {
             System.out.println(String.format("Could not find service %s dude.", svc));
             return;
         }
+        Job job = jobQueue.submit(String.format("scale --replicas %d %s", replicas, svc), svc,
+                j -> scaleSvc(j, svc, replicas));
+        System.out.println(String.format("Scaling %s as job %d dude.", svc, job.getId()));
+    }
+
+    private void scaleSvc(Job job, String svc, int replicas) {
+        // The number of running instances is only known once the previous jobs on the service have completed
+        Service s = ServiceContextProvider.getSvcRegistry().getService(svc);
+        if (s == null) {
+            throw new RuntimeException("Could not find service " + svc + ".");
+        }
 
         if(s.getInstances().size() > replicas) {
-            scaleDown(s, replicas);
+            scaleDown(job, s, replicas);
         } else if(s.getInstances().size() < replicas) {
-            scaleUp(s, replicas);
+            scaleUp(job, s, replicas);
         } else {
-            System.out.println(String.format("Nothing to be done dude. %s has already %d running instances.", svc, replicas));
+            job.log(String.format("Nothing to be done, %s has already %d running instances.", svc, replicas));
         }
-
-
+        saveState();
     }
 
-    private void stopDiscovery() {
+    private List<ContainerTeardown.Failure> stopDiscovery(boolean kill) {
         ServiceContext discoveryContext = ServiceContextProvider.getDiscoveryContext();
-        if (discoveryContext != null) {
-            ServiceContext clearedDiscoveryContext = contextBuilder.clearContext(discoveryContext);
-            ServiceContextProvider.setDiscoveryContext(clearedDiscoveryContext);
+        if (discoveryContext == null) {
+            return Collections.emptyList();
         }
+        ContainerTeardown.Result result = new ContainerTeardown(null, kill).tearDown(discoveryContext, null);
+        ServiceContextProvider.setDiscoveryContext(result.prune(ServiceRegistry.of(discoveryContext)).toContext());
+        return result.getFailures();
     }
 
     private void startSvc(ServiceDescriptor sd) {
         ServiceContext context = contextBuilder.buildServiceContext(sd);
-        ServiceContext postDiscoveryContext = discoveryProvider.populateRegistry(
-                ServiceContextProvider.getSvcContext().merge(context));
-        ServiceContextProvider.setSvcContext(postDiscoveryContext);
+        ServiceContext postDiscoveryContext = context.checkStatus(ServiceInstance.Status.STARTED)
+                ? discoveryProvider.populateRegistry(context)
+                : context;
+
+        // The started instances are merged into their services, so that the instances published concurrently,
+        // e.g. by a scale job, are kept
+        ServiceContextProvider.updateSvcRegistry(current -> {
+            ServiceRegistry registry = current;
+            for (Service started : context.getServices()) {
+                Service discovered = postDiscoveryContext.getService(started.getName());
+                Service svc = discovered != null ? discovered : started;
+                registry = registry.withInstances(svc.getName(), svc.getDescriptor(), svc.getInstances());
+            }
+            return registry;
+        });
     }
 
     private void shutSvcDown(Service svc) {
         Set<Service> toBeRemoved = new HashSet<>();
         toBeRemoved.add(svc);
-        ServiceContext context = contextBuilder.clearContext(new DefaultServiceContext(toBeRemoved));
-        ServiceContextProvider.setSvcContext(new DefaultServiceContext(ServiceContextProvider
-                .getSvcContext()
-                .getServices()
-                .stream()
-                .filter(s -> !s.getName().equals(svc.getName()))
-                .collect(Collectors.toSet())));
+        contextBuilder.clearContext(new DefaultServiceContext(toBeRemoved));
+        ServiceContextProvider.updateSvcRegistry(registry -> registry.withoutService(svc.getName()));
+    }
+
+    /**
+     * Reports the jobs that did not complete, and the outcome of the others, once they finish.
+     */
+    private void reportJob(Job job) {
+        switch (job.getState()) {
+            case FAILED:
+                print(String.format("Job %d (%s) failed dude: %s", job.getId(), job.getDescription(), job.getMessage()));
+                break;
+            case CANCELLED:
+                print(String.format("Job %d (%s) has been cancelled dude. %s", job.getId(), job.getDescription(), job.getMessage()));
+                break;
+            default:
+                print(String.format("Job %d (%s) is done: %s", job.getId(), job.getDescription(), job.getMessage()));
+        }
+    }
+
+    /**
+     * Prints a message from any thread. Background jobs print above the prompt, so that the line being typed
+     * is redrawn instead of being mixed with their output.
+     */
+    private void print(String message) {
+        if (shellReady) {
+            lineReader.printAbove(message);
+        } else {
+            System.out.println(message);
+        }
     }
 
     private boolean askYesNo(String question) {
@@ -201,77 +775,34 @@ public class LifecycleCommands implements Quit.Command {
 
 
 
-    private void scaleUp(Service s, int replicas) {
-        boolean randomise = s.getDescriptor().getContainerName() != null
-                && !s.getDescriptor().getContainerName().isEmpty();
-
-        ServiceDescriptor newDescriptor = buildDeltaDescriptor(s.getDescriptor(),
-                replicas - s.getInstances().size(),
-                randomise);
-        System.out.print(String.format("Scaling %s up to %d instances. Hold on a sec ... ", s.getName(), replicas));
-        startSvc(newDescriptor);
-        System.out.println("DONE");
+    private void scaleUp(Job job, Service s, int replicas) {
+        int delta = replicas - s.getInstances().size();
+        job.setTotal(delta);
+        job.log(String.format("Scaling %s up to %d instances.", s.getName(), replicas));
+        List<ServiceInstance> started = new ServiceScaler(contextBuilder, discoveryProvider, warmPool)
+                .withCancellation(job::isCancelled)
+                .scaleUp(s, delta, si -> job.progress(si.getContainerName() + " " + si.getStatus()));
+        long discovered = started.stream()
+                .filter(si -> si.hasStatus(ServiceInstance.Status.DISCOVERED))
+                .count();
+        job.log(String.format("%d/%d new instances of %s have been discovered.", discovered, delta, s.getName()));
     }
 
-    private void scaleDown(Service s, int replicas) {
+    private void scaleDown(Job job, Service s, int replicas) {
         List<ServiceInstance> asList = s.getInstances().stream().collect(Collectors.toList());
         Set<ServiceInstance> killableInstances = IntStream
                 .range(0, s.getInstances().size() - replicas)
                 .mapToObj(i -> asList.get(i))
                 .collect(Collectors.toSet());
 
-
-        Service toBeCleaned = new Service(s.getName(), killableInstances,
-                buildDeltaDescriptor(s.getDescriptor(), killableInstances.size(), false));
-
-        contextBuilder.clearContext(
-                new DefaultServiceContext(Stream.of(toBeCleaned).collect(Collectors.toSet())));
-        ServiceContextProvider.setSvcContext(cleanContext(toBeCleaned));
-    }
-
-    private ServiceContext cleanContext(Service toBeCleaned) {
-        Set<Service> currentServices = ServiceContextProvider.getSvcContext().getServices();
-
-        Set<Service> newServices = currentServices.stream()
-                .map(service -> {
-                    if(service.getName().equals(toBeCleaned.getName())) {
-                        return new Service(service.getName(),
-                                service.getInstances()
-                                    .stream()
-                                    .filter(si -> !toBeCleaned.getInstances().contains(si))
-                                    .collect(Collectors.toSet()),
-                                toBeCleaned.getDescriptor());
-                    }
-                    return service;
-                })
-                .collect(Collectors.toSet());
-        return new DefaultServiceContext(newServices);
-    }
-
-    private ServiceDescriptor buildDeltaDescriptor(ServiceDescriptor sd, int instances, boolean randomiseContainerName) {
-        return DefaultServiceDescriptor.builder()
-                .containerName(randomiseContainerName? randomise(sd.getContainerName()) : sd.getContainerName())
-                .customisationHook(sd.getCustomisationHook())
-                .instance(sd.getInstance())
-                .options(sd.getOptions())
-                .priority(sd.getPriority())
-                .svcDefinition(sd.getSvcDefinition())
-                .replicas(instances)
-                .build();
-    }
-
-    private String randomise(String containerName) {
-        if(containerName == null) {
-            containerName = "";
-        }
-        byte[] bytes = new byte[4];
-        SecureRandom sr = new SecureRandom();
-        sr.nextBytes(bytes);
-        return containerName.concat("-")
-                .concat(Base64.getEncoder().encodeToString(bytes)
-                .replaceAll("=", "0")
-                .replaceAll("\\+", "1")
-                .replaceAll("/", "2"));
+        job.setTotal(killableInstances.size());
+        job.log(String.format("Scaling %s down to %d instances.", s.getName(), replicas));
+        ServiceScaler scaler = new ServiceScaler(contextBuilder, discoveryProvider, warmPool)
+                .withCancellation(job::isCancelled);
+        // The instances stop receiving traffic before their containers are removed
+        scaler.deregister(s, killableInstances);
+        scaler.scaleDown(s, killableInstances, si -> job.progress(si.getContainerName() + " removed"));
+        job.log(String.format("Removed %s instances of %s.", job.getProgress(), s.getName()));
     }
 
 }
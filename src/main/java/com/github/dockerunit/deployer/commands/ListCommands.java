@@ -1,29 +1,86 @@
 package com.github.dockerunit.deployer.commands;
 
 import com.github.dockerunit.core.Service;
-import com.github.dockerunit.core.ServiceContext;
 import com.github.dockerunit.core.ServiceInstance;
 import com.github.dockerunit.deployer.ServiceContextProvider;
+import com.github.dockerunit.deployer.ServiceRegistry;
+import com.github.dockerunit.deployer.StackRegistry;
+import com.github.dockerunit.deployer.SvcClassLoadingManager;
+import com.github.dockerunit.deployer.WarmPool;
+import com.github.dockerunit.deployer.placement.DockerEndpoint;
+import com.github.dockerunit.deployer.placement.PlacementScheduler;
 import com.github.dockerunit.deployer.util.TableFactory;
+import lombok.Value;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.shell.standard.ShellComponent;
 import org.springframework.shell.standard.ShellMethod;
 import org.springframework.shell.standard.ShellOption;
 import org.springframework.shell.table.Table;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 @ShellComponent
 public class ListCommands {
 
+    static final List<TableFactory.Column<InstanceRow>> INSTANCE_COLUMNS = Arrays.asList(
+            new TableFactory.Column<>("svc", row -> String.format(" %s ", row.getSvc())),
+            new TableFactory.Column<>("container-name", row -> formatContainerName(row.getInstance().getContainerName())),
+            new TableFactory.Column<>("container-id", row -> formatContainerId(row.getInstance().getContainerId())),
+            new TableFactory.Column<>("gateway", row -> String.format(" %s ", row.getInstance().getGatewayAddress())),
+            new TableFactory.Column<>("gateway-port", row -> formatPort(row.getInstance().getGatewayPort())),
+            new TableFactory.Column<>("container-ip", row -> String.format(" %s ", row.getInstance().getContainerIp())),
+            new TableFactory.Column<>("container-port", row -> formatPort(row.getInstance().getContainerPort())),
+            new TableFactory.Column<>("status", row -> String.format(" %s ", row.getInstance().getStatus().toString())));
 
+    static final Map<String, Comparator<InstanceRow>> INSTANCE_ORDERS = new LinkedHashMap<>();
+
+    static {
+        Comparator<InstanceRow> byContainerName = Comparator.comparing(row -> String.valueOf(row.getInstance().getContainerName()));
+        INSTANCE_ORDERS.put("svc", Comparator.comparing(InstanceRow::getSvc).thenComparing(byContainerName));
+        INSTANCE_ORDERS.put("container-name", byContainerName);
+        INSTANCE_ORDERS.put("status", Comparator.comparing((InstanceRow row) -> row.getInstance().getStatus())
+                .thenComparing(InstanceRow::getSvc)
+                .thenComparing(byContainerName));
+    }
+
+    @Autowired
+    private WarmPool warmPool;
+
+
+    @ShellMethod(value = "Lists the stacks and the number of services and instances of each of them", key = {"get-stacks", "list-stacks"})
+    public Table listStacks() {
+        ServiceRegistry registry = ServiceContextProvider.getSvcRegistry();
+        List<String> stacks = new ArrayList<>(StackRegistry.getStacks());
+        String[][] data = new String[stacks.size()][4];
+
+        for (int i = 0; i < stacks.size(); i++) {
+            List<Service> services = StackRegistry.getServices(stacks.get(i))
+                    .stream()
+                    .map(registry::getService)
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.toList());
+            data[i][0] = String.format(" %s ", stacks.get(i));
+            data[i][1] = String.format(" %s ", SvcClassLoadingManager.getStackClassName(stacks.get(i)));
+            data[i][2] = String.format(" %d ", services.size());
+            data[i][3] = String.format(" %d ", services.stream().mapToInt(s -> s.getInstances().size()).sum());
+        }
+
+        return TableFactory.createTable(new String[] {"stack", "class", "services", "instances"}, data);
+    }
 
     @ShellMethod(value = "Lists the currently running services", key = {"get-svc", "list-svc"})
-    public Table listServices(){
-        ServiceContext svcContext = ServiceContextProvider.getSvcContext();
-        List<Service> services = svcContext.getServices().stream().collect(Collectors.toList());
+    public Table listServices(@ShellOption(value = "--stack", defaultValue = ShellOption.NULL) String stack){
+        List<Service> services = ServiceContextProvider.getSvcRegistry().getServices()
+                .stream()
+                .filter(s -> inStack(stack, s.getName()))
+                .collect(Collectors.toList());
         String[][] data = new String[services.size()][2];
 
         for (int i = 0; i < services.size(); i++) {
@@ -35,48 +92,107 @@ public class ListCommands {
     }
 
     @ShellMethod(value = "Lists the currently running service instances", key = {"get-instances", "list-instances"})
-    public Table listInstances(@ShellOption(value = "--svc", defaultValue = ShellOption.NULL) String svcName){
-        ServiceContext svcContext = ServiceContextProvider.getSvcContext();
-        List<Service> services = svcContext.getServices()
+    public Table listInstances(@ShellOption(value = "--stack", defaultValue = ShellOption.NULL) String stack,
+                               @ShellOption(value = "--svc", defaultValue = ShellOption.NULL) String svcName,
+                               @ShellOption(value = "--status", defaultValue = ShellOption.NULL) String status,
+                               @ShellOption(value = "--sort", defaultValue = "svc",
+                                       help = "One of svc, container-name, status") String sort,
+                               @ShellOption(value = "--page", defaultValue = "1") int page,
+                               @ShellOption(value = "--limit", defaultValue = "0",
+                                       help = "Instances per page, 0 for all") int limit) {
+        Comparator<InstanceRow> comparator = INSTANCE_ORDERS.get(sort);
+        if (comparator == null) {
+            System.out.println(String.format("Cannot sort by %s dude. Use one of %s.", sort, INSTANCE_ORDERS.keySet()));
+            return null;
+        }
+        ServiceInstance.Status statusFilter = null;
+        if (status != null) {
+            try {
+                statusFilter = ServiceInstance.Status.valueOf(status.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.out.println(String.format("Unknown status %s dude. Use one of %s.", status,
+                        Arrays.toString(ServiceInstance.Status.values())));
+                return null;
+            }
+        }
+
+        // Filter, sort and page before formatting, so that only the visible rows are built
+        ServiceInstance.Status wantedStatus = statusFilter;
+        List<InstanceRow> rows = ServiceContextProvider.getSvcRegistry().getServices()
                 .stream()
-                .filter(s -> svcName == null ? true : svcName.equals(s.getName()))
+                .filter(s -> svcName == null || svcName.equals(s.getName()))
+                .filter(s -> inStack(stack, s.getName()))
+                .flatMap(s -> s.getInstances().stream().map(si -> new InstanceRow(s.getName(), si)))
+                .filter(row -> wantedStatus == null || row.getInstance().hasStatus(wantedStatus))
+                .sorted(comparator)
                 .collect(Collectors.toList());
-        services.sort(Comparator.comparing(Service::getName));
 
-        int allInstances = services.stream()
-                .map(svc -> svc.getInstances())
-                .flatMap(Collection::stream)
-                .collect(Collectors.toList())
-                .size();
+        List<InstanceRow> visible = rows;
+        if (limit > 0) {
+            int from = Math.min(rows.size(), Math.max(0, page - 1) * limit);
+            visible = rows.subList(from, Math.min(rows.size(), from + limit));
+            System.out.println(String.format("Showing %d-%d of %d instances (page %d of %d).",
+                    visible.isEmpty() ? 0 : from + 1, from + visible.size(), rows.size(),
+                    page, Math.max(1, (rows.size() + limit - 1) / limit)));
+        }
+
+        return TableFactory.createTable(INSTANCE_COLUMNS, visible);
+    }
 
-        String[] tableHeader = {"svc", "container-name", "container-id", "gateway", "gateway-port", "container-ip", "container-port", "status"};
+    @ShellMethod(value = "Lists the standby containers of the warm pool", key = {"get-pool", "list-pool"})
+    public Table listPool() {
+        List<WarmPool.PoolStats> stats = warmPool.getStats();
+        String[][] data = new String[stats.size()][5];
 
-        String[][] data = new String[allInstances][tableHeader.length];
+        for (int i = 0; i < stats.size(); i++) {
+            WarmPool.PoolStats ps = stats.get(i);
+            data[i][0] = String.format(" %s ", ps.getSvcName());
+            data[i][1] = String.format(" %d ", ps.getSize());
+            data[i][2] = String.format(" %d ", ps.getAvailable());
+            data[i][3] = String.format(" %d ", ps.getHits());
+            data[i][4] = String.format(" %d ", ps.getMisses());
+        }
 
-        int row = 0;
-        for (int i = 0; i < services.size(); i++) {
-            Service s = services.get(i);
-            List<ServiceInstance> instances = s.getInstances().stream().collect(Collectors.toList());
-            for(int j = 0; j < instances.size(); j++) {
-                ServiceInstance si = instances.get(j);
-                data[row] = new String[] {
-                        String.format(" %s ", s.getName()),
-                        String.format(" %s ", si.getContainerName().substring(1)),
-                        String.format(" %s ", si.getContainerId().substring(0, 12)),
-                        String.format(" %s ", si.getGatewayAddress()),
-                        String.format(si.getGatewayPort() == 0 ? "%s" :" %d ",
-                                si.getGatewayPort() == 0 ? "N/A" : si.getGatewayPort()),
-                        String.format(" %s ", si.getContainerIp()),
-                        String.format(
-                                si.getContainerPort() == 0 ? "%s" :" %d ",
-                                si.getContainerPort() == 0 ? "N/A" : si.getContainerPort()),
-                        String.format(" %s ", si.getStatus().toString())
-                };
-                row++;
-            }
+        return TableFactory.createTable(new String[] {"svc", "size", "available", "hits", "misses"}, data);
+    }
+
+    @ShellMethod(value = "Lists the Docker endpoints and the number of containers placed on each of them", key = {"get-endpoints", "list-endpoints"})
+    public Table listEndpoints() {
+        List<DockerEndpoint> endpoints = PlacementScheduler.getEndpoints();
+        String[][] data = new String[endpoints.size()][4];
+
+        for (int i = 0; i < endpoints.size(); i++) {
+            DockerEndpoint endpoint = endpoints.get(i);
+            data[i][0] = String.format(" %s ", endpoint.getName());
+            data[i][1] = String.format(" %s ", endpoint.getHost() == null ? "default" : endpoint.getHost());
+            data[i][2] = String.format(" %s ", endpoint.getGatewayAddress() == null ? "default" : endpoint.getGatewayAddress());
+            data[i][3] = String.format(" %d ", PlacementScheduler.getContainers(endpoint));
         }
 
-        return TableFactory.createTable(tableHeader, data);
+        return TableFactory.createTable(new String[] {"endpoint", "host", "gateway", "containers"}, data);
+    }
+
+    private static boolean inStack(String stack, String svcName) {
+        return stack == null || StackRegistry.getStack(svcName).map(stack::equals).orElse(false);
+    }
+
+    private static String formatPort(int port) {
+        return port == 0 ? "N/A" : String.format(" %d ", port);
+    }
+
+    // Instances whose containers could not be created have neither a name nor an id
+    private static String formatContainerName(String name) {
+        return name == null ? "N/A" : String.format(" %s ", name.startsWith("/") ? name.substring(1) : name);
+    }
+
+    private static String formatContainerId(String id) {
+        return id == null ? "N/A" : String.format(" %s ", id.substring(0, Math.min(12, id.length())));
+    }
+
+    @Value
+    static class InstanceRow {
+        private final String svc;
+        private final ServiceInstance instance;
     }
 
 }
@@ -0,0 +1,23 @@
+package com.github.dockerunit.deployer.commands;
+
+import com.github.dockerunit.deployer.DeployerSettings;
+import com.github.dockerunit.deployer.metrics.MetricsExporter;
+import com.github.dockerunit.deployer.metrics.MetricsTables;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+import org.springframework.shell.table.Table;
+
+@ShellComponent
+public class MetricsCommands {
+
+    @ShellMethod(value = "Shows the duration of the lifecycle phases", key = {"metrics"})
+    public Table metrics(@ShellOption(value = "--dump", help = "Also writes the metrics as JSON and Prometheus text") boolean dump) {
+        if (dump) {
+            MetricsExporter.dump(DeployerSettings.getMetricsDirectory());
+            System.out.println(String.format("Metrics written to %s dude.", DeployerSettings.getMetricsDirectory()));
+        }
+        return MetricsTables.allMetrics();
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.github.dockerunit.deployer.commands;
+
+import com.github.dockerunit.deployer.ContainerEventApplier;
+import com.github.dockerunit.deployer.DeployerSettings;
+import com.github.dockerunit.deployer.ServiceContextProvider;
+import com.github.dockerunit.deployer.docker.ContainerEventSource;
+import org.jline.terminal.Attributes;
+import org.jline.terminal.Size;
+import org.jline.terminal.Terminal;
+import org.jline.utils.Display;
+import org.jline.utils.NonBlockingReader;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.shell.standard.ShellComponent;
+import org.springframework.shell.standard.ShellMethod;
+import org.springframework.shell.standard.ShellOption;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@ShellComponent
+public class WatchCommands {
+
+    @Autowired
+    private ContainerEventSource eventSource;
+
+    @Autowired
+    @Lazy
+    private Terminal terminal;
+
+    @ShellMethod(value = "Shows the service instances, updated as soon as Docker reports a change", key = {"watch"})
+    public void watch(@ShellOption(value = "--svc", defaultValue = ShellOption.NULL) String svcName,
+                      @ShellOption(value = "--fps", defaultValue = "0",
+                              help = "Maximum number of redraws per second, 0 for the configured watchFrameRate") int fps) throws IOException {
+        long frameMillis = 1000L / (fps > 0 ? fps : DeployerSettings.getWatchFrameRate());
+        InstanceTableView view = new InstanceTableView(svcName);
+        Display display = new Display(terminal, false);
+        AtomicBoolean interrupted = new AtomicBoolean(false);
+
+        Terminal.SignalHandler previousHandler = terminal.handle(Terminal.Signal.INT, signal -> interrupted.set(true));
+        Attributes attributes = terminal.enterRawMode();
+        try (Closeable subscription = eventSource.subscribe(ContainerEventApplier::apply)) {
+            long renderedVersion = -1;
+            Size renderedSize = null;
+            while (!interrupted.get()) {
+                // Events only update the registry: all the events received within a frame end up in a single redraw,
+                // and the display only rewrites the lines that differ from the previous frame
+                ServiceContextProvider.Snapshot snapshot = ServiceContextProvider.getSnapshot();
+                Size size = terminal.getSize();
+                if (snapshot.getVersion() != renderedVersion || !size.equals(renderedSize)) {
+                    display.resize(size.getRows(), size.getColumns());
+                    display.update(view.render(snapshot.getSvcRegistry(), size.getColumns(), size.getRows()), 0);
+                    terminal.flush();
+                    renderedVersion = snapshot.getVersion();
+                    renderedSize = size;
+                }
+                int c = terminal.reader().read(frameMillis);
+                if (c == 'q' || c == 'Q' || c == NonBlockingReader.EOF) {
+                    break;
+                }
+            }
+        } finally {
+            terminal.setAttributes(attributes);
+            terminal.handle(Terminal.Signal.INT, previousHandler);
+            terminal.writer().println();
+            terminal.flush();
+        }
+    }
+
+}
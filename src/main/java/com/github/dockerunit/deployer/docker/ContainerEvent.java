@@ -0,0 +1,15 @@
+package com.github.dockerunit.deployer.docker;
+
+import lombok.Value;
+
+/**
+ * A lifecycle event of a container, as reported by the Docker daemon (e.g. start, die, health_status: unhealthy).
+ */
+@Value
+public class ContainerEvent {
+
+    private final String containerId;
+    private final String action;
+    private final long time;
+
+}
@@ -0,0 +1,14 @@
+package com.github.dockerunit.deployer.docker;
+
+import java.io.Closeable;
+import java.util.function.Consumer;
+
+/**
+ * A stream of container events. Events are delivered on a thread owned by the source until the returned
+ * subscription is closed.
+ */
+public interface ContainerEventSource {
+
+    Closeable subscribe(Consumer<ContainerEvent> listener);
+
+}
@@ -0,0 +1,165 @@
+package com.github.dockerunit.deployer.docker;
+
+import com.github.dockerjava.api.model.CpuStatsConfig;
+import com.github.dockerjava.api.model.MemoryStatsConfig;
+import com.github.dockerjava.api.model.Statistics;
+import com.github.dockerjava.core.async.ResultCallbackTemplate;
+import lombok.Value;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the latest CPU and memory usage of the tracked containers.
+ * Every container is sampled through a single Docker stats stream, which the daemon feeds about once a second,
+ * rather than with a call per sample. The streams go through the streaming clients, so that they never hold the
+ * connections of the clients the other Docker calls are made with. A stream that ends, e.g. because its container is gone, is opened again the
+ * next time the containers are tracked.
+ */
+public class ContainerStatsSampler {
+
+    private static final Logger logger = Logger.getLogger(ContainerStatsSampler.class.getSimpleName());
+
+    private final Map<String, StatsCallback> streams = new HashMap<>();
+    private final Map<String, ContainerStats> latest = new ConcurrentHashMap<>();
+
+    /**
+     * Streams the stats of the given containers, and stops streaming the stats of every other container.
+     */
+    public synchronized void track(Collection<String> containerIds) {
+        Set<String> wanted = new HashSet<>(containerIds);
+        Iterator<Map.Entry<String, StatsCallback>> it = streams.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, StatsCallback> stream = it.next();
+            if (!wanted.contains(stream.getKey())) {
+                close(stream.getValue());
+                latest.remove(stream.getKey());
+                it.remove();
+            }
+        }
+        for (String containerId : wanted) {
+            if (!streams.containsKey(containerId)) {
+                try {
+                    streams.put(containerId, DockerClients.streamingForContainer(containerId)
+                            .statsCmd(containerId)
+                            .exec(new StatsCallback(containerId)));
+                } catch (RuntimeException e) {
+                    logger.warning("Could not stream the stats of container " + containerId + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the latest stats of the container, or empty if none have been received yet
+     */
+    public Optional<ContainerStats> get(String containerId) {
+        return Optional.ofNullable(latest.get(containerId));
+    }
+
+    /**
+     * Closes every stream.
+     */
+    public synchronized void close() {
+        streams.values().forEach(stream -> close(stream));
+        streams.clear();
+        latest.clear();
+    }
+
+    private synchronized void ended(String containerId, StatsCallback stream) {
+        if (streams.remove(containerId, stream)) {
+            latest.remove(containerId);
+        }
+    }
+
+    private static void close(Closeable stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // The stream is closed anyway
+        }
+    }
+
+    private class StatsCallback extends ResultCallbackTemplate<StatsCallback, Statistics> {
+
+        private final String containerId;
+
+        private StatsCallback(String containerId) {
+            this.containerId = containerId;
+        }
+
+        @Override
+        public void onNext(Statistics statistics) {
+            ContainerStats.of(statistics, System.currentTimeMillis())
+                    .ifPresent(stats -> latest.put(containerId, stats));
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            // Streams of removed containers end with an error, which is not worth more than a debug line
+            logger.fine("Stats stream of container " + containerId + " failed: " + throwable.getMessage());
+            ended(containerId, this);
+            ContainerStatsSampler.close(this);
+        }
+
+        @Override
+        public void onComplete() {
+            ended(containerId, this);
+            super.onComplete();
+        }
+    }
+
+    @Value
+    public static class ContainerStats {
+        /**
+         * The CPU usage in percent of one CPU, as shown by {@code docker stats}.
+         */
+        private final double cpuPercent;
+        /**
+         * The memory usage in percent of the memory limit of the container.
+         */
+        private final double memoryPercent;
+        private final long time;
+
+        /**
+         * Computes the usage since the previous sample of the stream.
+         *
+         * @return empty if the stats do not have a previous sample to compare with, as the first ones of a stream
+         */
+        static Optional<ContainerStats> of(Statistics statistics, long time) {
+            CpuStatsConfig cpu = statistics.getCpuStats();
+            CpuStatsConfig previous = statistics.getPreCpuStats();
+            if (cpu == null || previous == null || cpu.getCpuUsage() == null || previous.getCpuUsage() == null) {
+                return Optional.empty();
+            }
+            long cpuDelta = valueOf(cpu.getCpuUsage().getTotalUsage()) - valueOf(previous.getCpuUsage().getTotalUsage());
+            long systemDelta = valueOf(cpu.getSystemCpuUsage()) - valueOf(previous.getSystemCpuUsage());
+            if (cpuDelta < 0 || systemDelta <= 0) {
+                return Optional.empty();
+            }
+            List<Long> perCpuUsage = cpu.getCpuUsage().getPercpuUsage();
+            int cpus = perCpuUsage == null || perCpuUsage.isEmpty() ? 1 : perCpuUsage.size();
+
+            MemoryStatsConfig memory = statistics.getMemoryStats();
+            double memoryPercent = memory == null || valueOf(memory.getLimit()) <= 0
+                    ? 0
+                    : 100.0 * valueOf(memory.getUsage()) / memory.getLimit();
+            return Optional.of(new ContainerStats(100.0 * cpuDelta / systemDelta * cpus, memoryPercent, time));
+        }
+
+        private static long valueOf(Long value) {
+            return value == null ? 0 : value;
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+package com.github.dockerunit.deployer.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.exception.NotModifiedException;
+import com.github.dockerjava.core.DefaultDockerClientConfig;
+import com.github.dockerjava.core.DockerClientBuilder;
+import com.github.dockerjava.core.DockerClientConfig;
+import com.github.dockerjava.jaxrs.JerseyDockerCmdExecFactory;
+import com.github.dockerunit.deployer.placement.DockerEndpoint;
+import com.github.dockerunit.deployer.placement.PlacementScheduler;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Provides the Docker client used for the operations that are not covered by the Dockerunit
+ * {@link com.github.dockerunit.core.internal.ServiceContextBuilder}.
+ */
+public class DockerClients {
+
+    // Every open stream holds a connection of the pool until it is closed
+    private static final int STREAMING_CONNECTIONS = 200;
+
+    private static DockerClient client;
+    private static DockerClient streamingClient;
+
+    public static synchronized DockerClient get() {
+        if (client == null) {
+            client = DockerClientBuilder.getInstance().build();
+        }
+        return client;
+    }
+
+    /**
+     * @return a client of the local daemon with a connection pool of its own, for long-lived streams that would
+     * otherwise hold the few connections of the shared client
+     */
+    public static synchronized DockerClient getStreaming() {
+        if (streamingClient == null) {
+            streamingClient = createStreaming(DefaultDockerClientConfig.createDefaultConfigBuilder().build());
+        }
+        return streamingClient;
+    }
+
+    public static DockerClient createStreaming(DockerClientConfig config) {
+        return DockerClientBuilder.getInstance(config)
+                .withDockerCmdExecFactory(new JerseyDockerCmdExecFactory()
+                        .withMaxTotalConnections(STREAMING_CONNECTIONS)
+                        .withMaxPerRouteConnections(STREAMING_CONNECTIONS))
+                .build();
+    }
+
+    /**
+     * @return the client of the daemon the container has been placed on, or the local one if it is not known
+     */
+    public static DockerClient forContainer(String containerId) {
+        return PlacementScheduler.endpointOf(containerId)
+                .map(DockerEndpoint::getClient)
+                .orElseGet(DockerClients::get);
+    }
+
+    /**
+     * @return the streaming client of the daemon the container has been placed on, or the local one if it is not known
+     */
+    public static DockerClient streamingForContainer(String containerId) {
+        return PlacementScheduler.endpointOf(containerId)
+                .map(DockerEndpoint::getStreamingClient)
+                .orElseGet(DockerClients::getStreaming);
+    }
+
+    public static boolean isRunning(String containerId) {
+        if (containerId == null) {
+            return false;
+        }
+        try {
+            InspectContainerResponse response = forContainer(containerId).inspectContainerCmd(containerId).exec();
+            return response.getState() != null && Boolean.TRUE.equals(response.getState().getRunning());
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Lists the given containers with a single call to each daemon they have been placed on.
+     *
+     * @return the status of every container that still exists (e.g. "Up 5 minutes (healthy)"), by container id
+     */
+    public static Map<String, String> getStatuses(Collection<String> containerIds) {
+        Map<DockerClient, List<String>> idsByClient = containerIds.stream()
+                .collect(Collectors.groupingBy(DockerClients::forContainer));
+        Map<String, String> statuses = new HashMap<>();
+        idsByClient.forEach((client, ids) -> client.listContainersCmd()
+                .withShowAll(true)
+                .withIdFilter(ids)
+                .exec()
+                .forEach(c -> statuses.put(c.getId(), c.getStatus() == null ? "" : c.getStatus())));
+        return statuses;
+    }
+
+    /**
+     * Stops the container, giving it {@code stopTimeout} seconds to exit before it is killed, and removes it.
+     * With {@code kill} the container is killed straight away. A container that does not exist anymore is ignored.
+     */
+    public static void stopAndRemove(String containerId, int stopTimeout, boolean kill) {
+        try {
+            if (!kill) {
+                forContainer(containerId).stopContainerCmd(containerId).withTimeout(stopTimeout).exec();
+            }
+        } catch (NotModifiedException e) {
+            // Already stopped
+        } catch (NotFoundException e) {
+            return;
+        }
+        try {
+            forContainer(containerId).removeContainerCmd(containerId).withForce(true).exec();
+        } catch (NotFoundException e) {
+            // Already removed
+        }
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.github.dockerunit.deployer.docker;
+
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.core.command.EventsResultCallback;
+import com.github.dockerunit.deployer.placement.DockerEndpoint;
+import com.github.dockerunit.deployer.placement.PlacementScheduler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streams the container events of every Docker endpoint containers are placed on.
+ */
+public class DockerEventSource implements ContainerEventSource {
+
+    private static final String[] ACTIONS = {"start", "restart", "die", "kill", "oom", "stop", "destroy",
+            "pause", "unpause", "health_status"};
+
+    @Override
+    public Closeable subscribe(Consumer<ContainerEvent> listener) {
+        List<Closeable> streams = new ArrayList<>();
+        try {
+            for (DockerEndpoint endpoint : PlacementScheduler.getEndpoints()) {
+                streams.add(subscribe(endpoint, listener));
+            }
+        } catch (RuntimeException e) {
+            streams.forEach(DockerEventSource::close);
+            throw e;
+        }
+        return () -> streams.forEach(DockerEventSource::close);
+    }
+
+    // Events are a long-lived stream, so they do not hold a connection of the pool of the short requests
+    private static Closeable subscribe(DockerEndpoint endpoint, Consumer<ContainerEvent> listener) {
+        return endpoint.getStreamingClient().eventsCmd()
+                .withEventFilter(ACTIONS)
+                .exec(new EventsResultCallback() {
+                    @Override
+                    public void onNext(Event event) {
+                        if (event.getId() != null && event.getStatus() != null) {
+                            listener.accept(new ContainerEvent(event.getId(), event.getStatus(),
+                                    event.getTime() == null ? 0 : event.getTime()));
+                        }
+                    }
+                });
+    }
+
+    private static void close(Closeable stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // The stream is closed anyway
+        }
+    }
+
+}
@@ -0,0 +1,272 @@
+package com.github.dockerunit.deployer.docker;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.api.command.PullImageCmd;
+import com.github.dockerjava.api.model.Image;
+import com.github.dockerjava.core.command.PullImageResultCallback;
+import com.github.dockerunit.deployer.DeployerSettings;
+import com.github.dockerunit.deployer.metrics.MetricsRegistry;
+import com.github.dockerunit.deployer.placement.DockerEndpoint;
+import com.github.dockerunit.deployer.placement.PlacementScheduler;
+import com.github.dockerunit.deployer.util.ThreadFactories;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Pulls the images of the services before their containers are created, on up to {@code pullParallelism} threads,
+ * on every Docker endpoint containers can be placed on.
+ * The images present on an endpoint are listed once per session, so that images that are already there are skipped
+ * without a call per image. The same image is never pulled twice at the same time, even by concurrent callers:
+ * the pulls run on threads owned by the puller, and each caller only stops waiting for them when it is cancelled.
+ * A failed pull is only logged: Dockerunit pulls the image again when the container is created, and reports the error.
+ */
+public class ImagePuller {
+
+    private static final Logger logger = Logger.getLogger(ImagePuller.class.getSimpleName());
+
+    private static final String LATEST = "latest";
+
+    private static final long IDLE_SECONDS = 60;
+    private static final long CANCELLATION_POLL_MILLIS = 200;
+
+    private final Map<String, Set<String>> localImages = new ConcurrentHashMap<>();
+    private final Map<String, SharedPull> pulls = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor executor;
+
+    public ImagePuller() {
+        // The threads stop when no image has been pulled for a while, as the puller is never closed
+        int parallelism = DeployerSettings.getPullParallelism();
+        executor = new ThreadPoolExecutor(parallelism, parallelism, IDLE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), ThreadFactories.named("dude-image-pull"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Pulls the given images on every endpoint, skipping the ones that are already present unless
+     * {@code skipPresentImages} is disabled.
+     *
+     * @param progress     notified of every image, in order, once it has been pulled or has failed to be pulled
+     * @param cancellation stops the caller from waiting for the pulls as soon as it holds; a pull that has not
+     *                     started yet is skipped if every caller waiting for it has been cancelled
+     * @return the number of images that have been pulled
+     */
+    public int pull(Collection<String> images, Consumer<String> progress, BooleanSupplier cancellation) {
+        List<Pull> missing = new ArrayList<>();
+        for (DockerEndpoint endpoint : PlacementScheduler.getEndpoints()) {
+            Set<String> present = DeployerSettings.isSkipPresentImages()
+                    ? localImages.computeIfAbsent(endpoint.getName(), name -> listImages(endpoint))
+                    : new LinkedHashSet<>();
+            images.stream()
+                    .filter(Objects::nonNull)
+                    .map(ImagePuller::normalise)
+                    .distinct()
+                    .filter(image -> !present.contains(image))
+                    .forEach(image -> missing.add(new Pull(endpoint, image)));
+        }
+        if (missing.isEmpty()) {
+            return 0;
+        }
+
+        List<SharedPull> shared = missing.stream()
+                .map(pull -> join(pull, cancellation))
+                .collect(Collectors.toList());
+        int pulled = 0;
+        for (int i = 0; i < missing.size(); i++) {
+            Pull pull = missing.get(i);
+            boolean success = await(pull, shared.get(i), cancellation);
+            pulled += success ? 1 : 0;
+            progress.accept(String.format("[%d/%d] %s %s", i + 1, missing.size(), pull.describe(),
+                    success ? "pulled" : "not pulled"));
+        }
+        return pulled;
+    }
+
+    /**
+     * Joins the pull of a concurrent caller, or starts the pull if there is none.
+     */
+    private SharedPull join(Pull pull, BooleanSupplier cancellation) {
+        while (true) {
+            SharedPull shared = pulls.get(pull.key());
+            if (shared == null) {
+                shared = new SharedPull(cancellation);
+                if (pulls.putIfAbsent(pull.key(), shared) == null) {
+                    start(pull, shared);
+                    return shared;
+                }
+            } else if (shared.join(cancellation)) {
+                return shared;
+            } else {
+                // The pull has just been skipped, as its callers had all been cancelled
+                pulls.remove(pull.key(), shared);
+            }
+        }
+    }
+
+    private void start(Pull pull, SharedPull shared) {
+        executor.execute(() -> {
+            try {
+                shared.complete(shared.isWanted() ? pull(pull) : PullOutcome.SKIPPED);
+            } finally {
+                pulls.remove(pull.key(), shared);
+            }
+        });
+    }
+
+    /**
+     * Waits for the pull until it is completed or the caller is cancelled. A pull that has been skipped because of
+     * the cancellation of the other callers is started again.
+     */
+    private boolean await(Pull pull, SharedPull shared, BooleanSupplier cancellation) {
+        try {
+            while (true) {
+                PullOutcome outcome = shared.await(cancellation);
+                if (outcome == null) {
+                    return false;
+                }
+                if (outcome != PullOutcome.SKIPPED) {
+                    return outcome == PullOutcome.PULLED;
+                }
+                shared = join(pull, cancellation);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private PullOutcome pull(Pull pull) {
+        long start = System.nanoTime();
+        try {
+            String image = pull.getImage();
+            DockerClient client = pull.getEndpoint().getClient();
+            // Images pinned by digest have no tag
+            int tagSeparator = image.lastIndexOf(':');
+            PullImageCmd cmd = image.contains("@")
+                    ? client.pullImageCmd(image)
+                    : client.pullImageCmd(image.substring(0, tagSeparator)).withTag(image.substring(tagSeparator + 1));
+            cmd.exec(new PullImageResultCallback()).awaitCompletion();
+            MetricsRegistry.record(MetricsRegistry.IMAGE_PULL, null, start);
+            localImages.computeIfAbsent(pull.getEndpoint().getName(), name -> ConcurrentHashMap.newKeySet()).add(image);
+            return PullOutcome.PULLED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return PullOutcome.FAILED;
+        } catch (RuntimeException e) {
+            logger.warning("Could not pull " + pull.describe() + ": " + e.getMessage());
+            return PullOutcome.FAILED;
+        }
+    }
+
+    private static Set<String> listImages(DockerEndpoint endpoint) {
+        Set<String> result = ConcurrentHashMap.newKeySet();
+        try {
+            endpoint.getClient()
+                    .listImagesCmd()
+                    .exec()
+                    .stream()
+                    .map(Image::getRepoTags)
+                    .filter(Objects::nonNull)
+                    .flatMap(Arrays::stream)
+                    .forEach(result::add);
+        } catch (RuntimeException e) {
+            logger.warning("Could not list the images of endpoint " + endpoint.getName() + ": " + e.getMessage());
+        }
+        return result;
+    }
+
+    /**
+     * Adds the latest tag to the images without a tag, which is how Docker lists them.
+     */
+    private static String normalise(String image) {
+        int lastSlash = image.lastIndexOf('/');
+        return image.indexOf(':', lastSlash + 1) < 0 && !image.contains("@") ? image + ":" + LATEST : image;
+    }
+
+    private enum PullOutcome {
+        PULLED, FAILED, SKIPPED
+    }
+
+    /**
+     * A pull awaited by one or more callers. It is skipped if all of them have been cancelled by the time it starts.
+     */
+    private static class SharedPull {
+
+        private final List<BooleanSupplier> cancellations = new ArrayList<>();
+        private final CompletableFuture<PullOutcome> outcome = new CompletableFuture<>();
+        private boolean started = false;
+
+        private SharedPull(BooleanSupplier cancellation) {
+            cancellations.add(cancellation);
+        }
+
+        /**
+         * @return false if the pull has already started without the caller and been skipped
+         */
+        private synchronized boolean join(BooleanSupplier cancellation) {
+            if (started && outcome.getNow(null) == PullOutcome.SKIPPED) {
+                return false;
+            }
+            cancellations.add(cancellation);
+            return true;
+        }
+
+        private synchronized boolean isWanted() {
+            started = true;
+            return cancellations.stream().anyMatch(cancellation -> !cancellation.getAsBoolean());
+        }
+
+        private synchronized void complete(PullOutcome result) {
+            outcome.complete(result);
+        }
+
+        /**
+         * @return the outcome of the pull, or null if the caller has been cancelled first
+         */
+        private PullOutcome await(BooleanSupplier cancellation) throws InterruptedException {
+            while (!cancellation.getAsBoolean()) {
+                try {
+                    return outcome.get(CANCELLATION_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // Checks the cancellation again
+                } catch (ExecutionException e) {
+                    return PullOutcome.FAILED;
+                }
+            }
+            return null;
+        }
+    }
+
+    @Value
+    private static class Pull {
+        private final DockerEndpoint endpoint;
+        private final String image;
+
+        private String key() {
+            return endpoint.getName() + "\t" + image;
+        }
+
+        private String describe() {
+            return PlacementScheduler.isDistributed() ? image + " on " + endpoint.getName() : image;
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.github.dockerunit.deployer.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Distribution of durations, in milliseconds, over fixed buckets.
+ */
+public class Histogram {
+
+    public static final long[] BUCKETS_MS = {10, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 120000};
+
+    // One count per bucket, plus one for the durations exceeding the last bucket
+    private final long[] counts = new long[BUCKETS_MS.length + 1];
+    private long count;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max;
+
+    public synchronized void record(long durationMs) {
+        int bucket = 0;
+        while (bucket < BUCKETS_MS.length && durationMs > BUCKETS_MS[bucket]) {
+            bucket++;
+        }
+        counts[bucket]++;
+        count++;
+        sum += durationMs;
+        min = Math.min(min, durationMs);
+        max = Math.max(max, durationMs);
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized long getSum() {
+        return sum;
+    }
+
+    public synchronized long getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    public synchronized double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the cumulative count of every bucket, the last one being the total count.
+     */
+    public synchronized long[] getCumulativeCounts() {
+        long[] cumulative = Arrays.copyOf(counts, counts.length);
+        for (int i = 1; i < cumulative.length; i++) {
+            cumulative[i] += cumulative[i - 1];
+        }
+        return cumulative;
+    }
+
+    /**
+     * Estimates the given percentile as the upper bound of the bucket it falls into.
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS_MS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(BUCKETS_MS[i], max);
+            }
+        }
+        return max;
+    }
+
+}
@@ -0,0 +1,24 @@
+package com.github.dockerunit.deployer.metrics;
+
+import lombok.Value;
+
+import java.util.Comparator;
+
+@Value
+public class MetricKey implements Comparable<MetricKey> {
+
+    private static final Comparator<MetricKey> ORDER = Comparator.comparing(MetricKey::getName)
+            .thenComparing(MetricKey::getSvc);
+
+    private final String name;
+
+    /**
+     * The service the metric refers to, empty for global metrics.
+     */
+    private final String svc;
+
+    @Override
+    public int compareTo(MetricKey other) {
+        return ORDER.compare(this, other);
+    }
+}
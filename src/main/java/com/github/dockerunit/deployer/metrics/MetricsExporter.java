@@ -0,0 +1,79 @@
+package com.github.dockerunit.deployer.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Writes the content of the {@link MetricsRegistry} as JSON and in the Prometheus text exposition format.
+ */
+public class MetricsExporter {
+
+    private static final Logger logger = Logger.getLogger(MetricsExporter.class.getSimpleName());
+
+    private static final String PREFIX = "dude_";
+
+    public static synchronized void dump(Path directory) {
+        try {
+            Files.createDirectories(directory);
+            Files.write(directory.resolve("dude-metrics.json"), toJson().getBytes(StandardCharsets.UTF_8));
+            Files.write(directory.resolve("dude-metrics.prom"), toPrometheus().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            logger.warning("Could not write metrics to " + directory + ": " + e.getMessage());
+        }
+    }
+
+    public static String toJson() {
+        StringBuilder json = new StringBuilder("{\n  \"metrics\": [");
+        boolean first = true;
+        for (Map.Entry<MetricKey, Histogram> entry : MetricsRegistry.getHistograms().entrySet()) {
+            Histogram h = entry.getValue();
+            json.append(first ? "\n" : ",\n");
+            json.append(String.format(Locale.ROOT,
+                    "    {\"name\": \"%s\", \"svc\": \"%s\", \"count\": %d, \"sumMs\": %d, \"minMs\": %d, "
+                            + "\"maxMs\": %d, \"meanMs\": %.1f, \"p50Ms\": %d, \"p95Ms\": %d}",
+                    escape(entry.getKey().getName()), escape(entry.getKey().getSvc()), h.getCount(), h.getSum(),
+                    h.getMin(), h.getMax(), h.getMean(), h.getPercentile(50), h.getPercentile(95)));
+            first = false;
+        }
+        return json.append("\n  ]\n}\n").toString();
+    }
+
+    public static String toPrometheus() {
+        StringBuilder prom = new StringBuilder();
+        String lastName = null;
+        for (Map.Entry<MetricKey, Histogram> entry : MetricsRegistry.getHistograms().entrySet()) {
+            String name = PREFIX + entry.getKey().getName() + "_seconds";
+            if (!name.equals(lastName)) {
+                prom.append("# TYPE ").append(name).append(" histogram\n");
+                lastName = name;
+            }
+            String svcLabel = entry.getKey().getSvc().isEmpty() ? ""
+                    : "svc=\"" + escape(entry.getKey().getSvc()) + "\",";
+            Histogram h = entry.getValue();
+            long[] cumulative = h.getCumulativeCounts();
+            for (int i = 0; i < Histogram.BUCKETS_MS.length; i++) {
+                prom.append(String.format(Locale.ROOT, "%s_bucket{%sle=\"%s\"} %d\n",
+                        name, svcLabel, seconds(Histogram.BUCKETS_MS[i]), cumulative[i]));
+            }
+            prom.append(String.format(Locale.ROOT, "%s_bucket{%sle=\"+Inf\"} %d\n", name, svcLabel, h.getCount()));
+            String labels = svcLabel.isEmpty() ? "" : "{" + svcLabel.substring(0, svcLabel.length() - 1) + "}";
+            prom.append(String.format(Locale.ROOT, "%s_sum%s %s\n", name, labels, seconds(h.getSum())));
+            prom.append(String.format(Locale.ROOT, "%s_count%s %d\n", name, labels, h.getCount()));
+        }
+        return prom.toString();
+    }
+
+    private static String seconds(long ms) {
+        return String.format(Locale.ROOT, "%.3f", ms / 1000.0);
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.github.dockerunit.deployer.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Collects the duration of the lifecycle phases (discovery provider boot, container builds, discovery, scaling...).
+ */
+public class MetricsRegistry {
+
+    public static final String DISCOVERY_PROVIDER_BOOT = "discovery_provider_boot";
+    public static final String CONTAINER_BUILD = "container_build";
+    public static final String DISCOVERY = "discovery";
+    public static final String CONTEXT_MERGE = "context_merge";
+    public static final String SETUP = "setup";
+    public static final String SCALE_UP = "scale_up";
+    public static final String SCALE_DOWN = "scale_down";
+    public static final String RESTART = "restart";
+    public static final String TEARDOWN = "teardown";
+    public static final String IMAGE_PULL = "image_pull";
+
+    private static final Map<MetricKey, Histogram> histograms = new ConcurrentHashMap<>();
+    // The duration of the latest startup of every service, which the histograms mix with scaling and restarts
+    private static final Map<MetricKey, Long> lastStartup = new ConcurrentHashMap<>();
+
+    public static Histogram histogram(String name, String svc) {
+        return histograms.computeIfAbsent(new MetricKey(name, svc == null ? "" : svc), key -> new Histogram());
+    }
+
+    /**
+     * Records the time elapsed since the given {@link System#nanoTime()}.
+     */
+    public static void record(String name, String svc, long startNanos) {
+        histogram(name, svc).record((System.nanoTime() - startNanos) / 1_000_000);
+    }
+
+    /**
+     * Records the time elapsed since the given {@link System#nanoTime()}, as the latest startup value of the service.
+     */
+    public static void recordStartup(String name, String svc, long startNanos) {
+        long durationMs = (System.nanoTime() - startNanos) / 1_000_000;
+        MetricKey key = new MetricKey(name, svc == null ? "" : svc);
+        histogram(name, svc).record(durationMs);
+        lastStartup.put(key, durationMs);
+    }
+
+    public static <T> T timeStartup(String name, String svc, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            recordStartup(name, svc, start);
+        }
+    }
+
+    public static <T> T time(String name, String svc, Supplier<T> action) {
+        long start = System.nanoTime();
+        try {
+            return action.get();
+        } finally {
+            record(name, svc, start);
+        }
+    }
+
+    public static void time(String name, String svc, Runnable action) {
+        time(name, svc, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Returns the histograms sorted by name and service.
+     */
+    public static Map<MetricKey, Histogram> getHistograms() {
+        return new TreeMap<>(histograms);
+    }
+
+    /**
+     * Returns the duration of the latest startup of every service, sorted by name and service.
+     */
+    public static Map<MetricKey, Long> getLastStartup() {
+        return new TreeMap<>(lastStartup);
+    }
+
+    public static void reset() {
+        histograms.clear();
+        lastStartup.clear();
+    }
+
+}
@@ -0,0 +1,68 @@
+package com.github.dockerunit.deployer.metrics;
+
+import com.github.dockerunit.deployer.util.TableFactory;
+import org.springframework.shell.table.Table;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class MetricsTables {
+
+    public static Table allMetrics() {
+        List<String[]> rows = new ArrayList<>();
+        for (Map.Entry<MetricKey, Histogram> entry : MetricsRegistry.getHistograms().entrySet()) {
+            Histogram h = entry.getValue();
+            rows.add(new String[] {
+                    String.format(" %s ", entry.getKey().getName()),
+                    String.format(" %s ", entry.getKey().getSvc().isEmpty() ? "-" : entry.getKey().getSvc()),
+                    String.format(" %d ", h.getCount()),
+                    String.format(" %.0f ", h.getMean()),
+                    String.format(" %d ", h.getPercentile(95)),
+                    String.format(" %d ", h.getMax())
+            });
+        }
+        return TableFactory.createTable(new String[] {"metric", "svc", "count", "mean-ms", "p95-ms", "max-ms"},
+                rows.toArray(new String[0][]));
+    }
+
+    /**
+     * Summarises the time spent by every service building its containers and being discovered in its latest startup,
+     * slowest service first. Scaling and restarts are not included.
+     */
+    public static Table startupSummary() {
+        Map<MetricKey, Long> lastStartup = MetricsRegistry.getLastStartup();
+        Set<String> services = new TreeSet<>();
+        lastStartup.keySet().stream()
+                .filter(key -> !key.getSvc().isEmpty())
+                .forEach(key -> services.add(key.getSvc()));
+
+        List<long[]> timings = new ArrayList<>();
+        List<String> names = new ArrayList<>(services);
+        for (String svc : names) {
+            long build = lastStartup.getOrDefault(new MetricKey(MetricsRegistry.CONTAINER_BUILD, svc), 0L);
+            long discovery = lastStartup.getOrDefault(new MetricKey(MetricsRegistry.DISCOVERY, svc), 0L);
+            timings.add(new long[] {build, discovery, build + discovery});
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < names.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingLong((Integer i) -> timings.get(i)[2]).reversed());
+
+        String[][] data = new String[order.size()][4];
+        for (int row = 0; row < order.size(); row++) {
+            int i = order.get(row);
+            data[row][0] = String.format(" %s ", names.get(i));
+            data[row][1] = String.format(" %d ", timings.get(i)[0]);
+            data[row][2] = String.format(" %d ", timings.get(i)[1]);
+            data[row][3] = String.format(" %d ", timings.get(i)[2]);
+        }
+        return TableFactory.createTable(new String[] {"svc", "build-ms", "discovery-ms", "total-ms"}, data);
+    }
+
+}
@@ -0,0 +1,102 @@
+package com.github.dockerunit.deployer.placement;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerjava.core.DefaultDockerClientConfig;
+import com.github.dockerjava.core.DockerClientBuilder;
+import com.github.dockerjava.core.DockerClientConfig;
+import com.github.dockerunit.core.internal.ServiceContextBuilder;
+import com.github.dockerunit.deployer.docker.DockerClients;
+import lombok.Getter;
+
+import java.net.URI;
+
+/**
+ * A Docker daemon the containers can be placed on, with the Dockerunit builder that creates containers on it.
+ * The gateway address is the address the published ports of its containers are reachable on from the discovery
+ * provider, which is null for the local daemon as Dockerunit already sets it.
+ */
+@Getter
+public class DockerEndpoint {
+
+    public static final String LOCAL = "local";
+
+    private final String name;
+    private final String host;
+    private final String gatewayAddress;
+    private final ServiceContextBuilder contextBuilder;
+
+    @Getter(lombok.AccessLevel.NONE)
+    private DockerClient client;
+
+    @Getter(lombok.AccessLevel.NONE)
+    private DockerClient streamingClient;
+
+    /**
+     * Creates an endpoint backed by the given builder, e.g. an in-process stand-in for a Docker daemon.
+     *
+     * @param host the Docker host the builder creates containers on, or null for the local daemon
+     */
+    public DockerEndpoint(String name, String host, String gatewayAddress, ServiceContextBuilder contextBuilder) {
+        this(name, host, gatewayAddress, contextBuilder, null);
+    }
+
+    private DockerEndpoint(String name, String host, String gatewayAddress, ServiceContextBuilder contextBuilder,
+                           DockerClient client) {
+        this.name = name;
+        this.host = host;
+        this.gatewayAddress = gatewayAddress;
+        this.contextBuilder = contextBuilder;
+        this.client = client;
+    }
+
+    public static DockerEndpoint local(ServiceContextBuilder contextBuilder) {
+        return new DockerEndpoint(LOCAL, null, null, contextBuilder);
+    }
+
+    /**
+     * Creates an endpoint for the Docker daemon listening on the given host, e.g. tcp://10.0.0.2:2375.
+     * The host name of the URI is used as the gateway address of its containers.
+     */
+    public static DockerEndpoint remote(String name, String host) {
+        String gatewayAddress = URI.create(host).getHost();
+        if (gatewayAddress == null) {
+            throw new IllegalArgumentException("Docker endpoint " + name + " must be a tcp:// host, got " + host);
+        }
+        // The default Dockerunit builder is bound to the local daemon, so the endpoint builds with its own client
+        DockerClient client = DockerClientBuilder.getInstance(config(host)).build();
+        return new DockerEndpoint(name, host, gatewayAddress, new EndpointContextBuilder(client), client);
+    }
+
+    private static DockerClientConfig config(String host) {
+        return DefaultDockerClientConfig.createDefaultConfigBuilder()
+                .withDockerHost(host)
+                .build();
+    }
+
+    /**
+     * @return the client of the daemon, for the operations that are not covered by the Dockerunit builder
+     */
+    public synchronized DockerClient getClient() {
+        if (host == null) {
+            return DockerClients.get();
+        }
+        if (client == null) {
+            client = DockerClientBuilder.getInstance(config(host)).build();
+        }
+        return client;
+    }
+
+    /**
+     * @return the client of the daemon for long-lived streams, which has a connection pool of its own
+     */
+    public synchronized DockerClient getStreamingClient() {
+        if (host == null) {
+            return DockerClients.getStreaming();
+        }
+        if (streamingClient == null) {
+            streamingClient = DockerClients.createStreaming(config(host));
+        }
+        return streamingClient;
+    }
+
+}
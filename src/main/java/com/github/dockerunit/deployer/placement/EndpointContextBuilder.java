@@ -0,0 +1,53 @@
+package com.github.dockerunit.deployer.placement;
+
+import com.github.dockerjava.api.DockerClient;
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceContext;
+import com.github.dockerunit.core.internal.ServiceBuilder;
+import com.github.dockerunit.core.internal.ServiceBuilderFactory;
+import com.github.dockerunit.core.internal.ServiceContextBuilder;
+import com.github.dockerunit.core.internal.ServiceDescriptor;
+import com.github.dockerunit.core.internal.UsageDescriptor;
+import com.github.dockerunit.core.internal.service.DefaultServiceContext;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Creates and removes containers on the Docker daemon of the given client, through the Dockerunit service builder.
+ * The default Dockerunit context builder is shared and always uses the client of the local daemon.
+ */
+class EndpointContextBuilder implements ServiceContextBuilder {
+
+    private final DockerClient client;
+    private final ServiceBuilder serviceBuilder = ServiceBuilderFactory.create();
+
+    EndpointContextBuilder(DockerClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public ServiceContext buildContext(UsageDescriptor descriptor) {
+        return new DefaultServiceContext(descriptor.getUsages()
+                .stream()
+                .map(sd -> serviceBuilder.build(sd, client))
+                .collect(Collectors.toSet()));
+    }
+
+    @Override
+    public ServiceContext buildServiceContext(ServiceDescriptor descriptor) {
+        Set<Service> services = new HashSet<>();
+        services.add(serviceBuilder.build(descriptor, client));
+        return new DefaultServiceContext(services);
+    }
+
+    @Override
+    public ServiceContext clearContext(ServiceContext context) {
+        return new DefaultServiceContext(context.getServices()
+                .stream()
+                .map(svc -> serviceBuilder.cleanup(svc, client))
+                .collect(Collectors.toSet()));
+    }
+
+}
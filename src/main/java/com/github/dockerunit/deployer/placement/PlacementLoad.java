@@ -0,0 +1,17 @@
+package com.github.dockerunit.deployer.placement;
+
+/**
+ * A read-only view of the containers placed on every endpoint.
+ */
+public interface PlacementLoad {
+
+    /**
+     * @return the number of containers placed so far, on any endpoint
+     */
+    long getPlacementCount();
+
+    int getContainers(DockerEndpoint endpoint);
+
+    int getContainers(DockerEndpoint endpoint, String svcName);
+
+}
@@ -0,0 +1,186 @@
+package com.github.dockerunit.deployer.placement;
+
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceContext;
+import com.github.dockerunit.core.internal.ServiceContextBuilder;
+import com.github.dockerunit.deployer.DeployerSettings;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Decides which Docker endpoint every new container is created on, and remembers where each container lives so that
+ * it is later removed or inspected through the right daemon.
+ * Containers being created count towards the load of their endpoint, so concurrent placements are spread as well.
+ */
+public class PlacementScheduler {
+
+    private static final List<DockerEndpoint> endpoints = new ArrayList<>();
+    private static PlacementStrategy strategy = PlacementStrategies.ROUND_ROBIN;
+
+    private static final Map<String, Placement> placementsByContainer = new HashMap<>();
+    private static final Map<Placement, Integer> pending = new HashMap<>();
+    private static long placementCount = 0;
+
+    private static final PlacementLoad load = new PlacementLoad() {
+        @Override
+        public long getPlacementCount() {
+            return placementCount;
+        }
+
+        @Override
+        public int getContainers(DockerEndpoint endpoint) {
+            return count(endpoint.getName(), null);
+        }
+
+        @Override
+        public int getContainers(DockerEndpoint endpoint, String svcName) {
+            return count(endpoint.getName(), svcName);
+        }
+    };
+
+    /**
+     * Places containers on the local daemon and the {@code dockerEndpoints}, using the {@code placementStrategy}.
+     *
+     * @param localBuilder the builder of the local daemon
+     */
+    public static void configure(ServiceContextBuilder localBuilder) {
+        List<DockerEndpoint> configured = new ArrayList<>();
+        configured.add(DockerEndpoint.local(localBuilder));
+        DeployerSettings.getDockerEndpoints().forEach((name, host) -> configured.add(DockerEndpoint.remote(name, host)));
+        configure(configured, PlacementStrategies.of(DeployerSettings.getPlacementStrategy()));
+    }
+
+    /**
+     * Places containers on the given endpoints, which can be in-process stand-ins for Docker daemons.
+     */
+    public static synchronized void configure(List<DockerEndpoint> newEndpoints, PlacementStrategy newStrategy) {
+        if (newEndpoints.isEmpty()) {
+            throw new IllegalArgumentException("At least one Docker endpoint is needed.");
+        }
+        endpoints.clear();
+        endpoints.addAll(newEndpoints);
+        strategy = newStrategy;
+        pending.clear();
+    }
+
+    /**
+     * @return true if containers can be placed on more than one endpoint
+     */
+    public static synchronized boolean isDistributed() {
+        return endpoints.size() > 1;
+    }
+
+    public static synchronized List<DockerEndpoint> getEndpoints() {
+        return new ArrayList<>(endpoints);
+    }
+
+    /**
+     * @return the first endpoint, which is the local daemon unless other endpoints have been configured
+     */
+    public static synchronized DockerEndpoint getDefaultEndpoint() {
+        if (endpoints.isEmpty()) {
+            throw new IllegalStateException("No Docker endpoint has been configured.");
+        }
+        return endpoints.get(0);
+    }
+
+    /**
+     * Chooses the endpoint of a new container of the service. The container counts towards the load of the endpoint
+     * until {@link #placed(DockerEndpoint, String, ServiceContext)} is called.
+     */
+    public static synchronized DockerEndpoint place(String svcName) {
+        DockerEndpoint endpoint = endpoints.size() == 1
+                ? endpoints.get(0)
+                : strategy.choose(svcName, Collections.unmodifiableList(endpoints), load);
+        if (endpoint == null || !endpoints.contains(endpoint)) {
+            throw new IllegalStateException("Placement strategy chose an unknown endpoint for svc " + svcName);
+        }
+        pending.merge(new Placement(endpoint.getName(), svcName), 1, Integer::sum);
+        placementCount++;
+        return endpoint;
+    }
+
+    /**
+     * Records the containers that have been created on the endpoint chosen by {@link #place(String)}.
+     */
+    public static synchronized void placed(DockerEndpoint endpoint, String svcName, ServiceContext context) {
+        Placement placement = new Placement(endpoint.getName(), svcName);
+        pending.computeIfPresent(placement, (p, count) -> count > 1 ? count - 1 : null);
+        for (Service svc : context.getServices()) {
+            svc.getInstances()
+                    .stream()
+                    .filter(si -> si.getContainerId() != null)
+                    .forEach(si -> placementsByContainer.put(si.getContainerId(), new Placement(endpoint.getName(), svc.getName())));
+        }
+    }
+
+    /**
+     * Records a container created in a previous session.
+     */
+    public static synchronized void adopt(String containerId, String endpointName, String svcName) {
+        if (containerId != null && endpointName != null) {
+            placementsByContainer.put(containerId, new Placement(endpointName, svcName));
+        }
+    }
+
+    public static synchronized void release(String containerId) {
+        if (containerId != null) {
+            placementsByContainer.remove(containerId);
+        }
+    }
+
+    /**
+     * @return the endpoint the container has been placed on, or empty if it is not known
+     */
+    public static synchronized Optional<DockerEndpoint> endpointOf(String containerId) {
+        Placement placement = containerId == null ? null : placementsByContainer.get(containerId);
+        if (placement == null) {
+            return Optional.empty();
+        }
+        return endpoints.stream()
+                .filter(e -> e.getName().equals(placement.getEndpointName()))
+                .findFirst();
+    }
+
+    public static synchronized Optional<String> endpointNameOf(String containerId) {
+        Placement placement = containerId == null ? null : placementsByContainer.get(containerId);
+        return Optional.ofNullable(placement).map(Placement::getEndpointName);
+    }
+
+    /**
+     * @return the number of containers placed on the endpoint, including the ones being created
+     */
+    public static synchronized int getContainers(DockerEndpoint endpoint) {
+        return count(endpoint.getName(), null);
+    }
+
+    private static int count(String endpointName, String svcName) {
+        int placed = (int) placementsByContainer.values()
+                .stream()
+                .filter(p -> p.matches(endpointName, svcName))
+                .count();
+        int creating = pending.entrySet()
+                .stream()
+                .filter(e -> e.getKey().matches(endpointName, svcName))
+                .mapToInt(Map.Entry::getValue)
+                .sum();
+        return placed + creating;
+    }
+
+    @Value
+    private static class Placement {
+        private final String endpointName;
+        private final String svcName;
+
+        private boolean matches(String endpointName, String svcName) {
+            return this.endpointName.equals(endpointName) && (svcName == null || svcName.equals(this.svcName));
+        }
+    }
+
+}
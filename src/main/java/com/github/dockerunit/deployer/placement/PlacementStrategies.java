@@ -0,0 +1,85 @@
+package com.github.dockerunit.deployer.placement;
+
+import com.github.dockerunit.deployer.SvcClassLoadingManager;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The built-in placement strategies.
+ */
+public enum PlacementStrategies implements PlacementStrategy {
+
+    /**
+     * Places the containers on every endpoint in turn.
+     */
+    ROUND_ROBIN("round-robin") {
+        @Override
+        public DockerEndpoint choose(String svcName, List<DockerEndpoint> endpoints, PlacementLoad load) {
+            return endpoints.get((int) (load.getPlacementCount() % endpoints.size()));
+        }
+    },
+
+    /**
+     * Places the containers on the endpoint running the fewest containers.
+     */
+    LEAST_LOADED("least-loaded") {
+        @Override
+        public DockerEndpoint choose(String svcName, List<DockerEndpoint> endpoints, PlacementLoad load) {
+            return endpoints.stream()
+                    .min(Comparator.comparingInt(load::getContainers))
+                    .orElseThrow(IllegalStateException::new);
+        }
+    },
+
+    /**
+     * Places the containers on the endpoint running the fewest containers of the same service,
+     * so that the replicas of a service end up on different daemons.
+     */
+    SPREAD("spread") {
+        @Override
+        public DockerEndpoint choose(String svcName, List<DockerEndpoint> endpoints, PlacementLoad load) {
+            return endpoints.stream()
+                    .min(Comparator.<DockerEndpoint>comparingInt(e -> load.getContainers(e, svcName))
+                            .thenComparingInt(load::getContainers))
+                    .orElseThrow(IllegalStateException::new);
+        }
+    };
+
+    private final String strategyName;
+
+    PlacementStrategies(String strategyName) {
+        this.strategyName = strategyName;
+    }
+
+    public String getStrategyName() {
+        return strategyName;
+    }
+
+    /**
+     * Returns the built-in strategy with the given name or, failing that, an instance of the {@link PlacementStrategy}
+     * class with the given name, loaded from the project class path.
+     */
+    public static PlacementStrategy of(String name) {
+        return Arrays.stream(values())
+                .filter(s -> s.strategyName.equals(name))
+                .<PlacementStrategy>map(s -> s)
+                .findFirst()
+                .orElseGet(() -> load(name));
+    }
+
+    private static PlacementStrategy load(String className) {
+        try {
+            Class<?> strategyClass = Class.forName(className, true, SvcClassLoadingManager.getClassLoader());
+            return (PlacementStrategy) strategyClass.newInstance();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IllegalArgumentException("Unknown placement strategy " + className + ". Use one of "
+                    + Arrays.toString(Arrays.stream(values()).map(PlacementStrategies::getStrategyName).toArray())
+                    + " or the name of a " + PlacementStrategy.class.getSimpleName() + " class.", e);
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalArgumentException("Could not create placement strategy " + className, e);
+        }
+    }
+
+}
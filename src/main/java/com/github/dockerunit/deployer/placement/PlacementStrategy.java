@@ -0,0 +1,19 @@
+package com.github.dockerunit.deployer.placement;
+
+import java.util.List;
+
+/**
+ * Chooses the endpoint a new container of a service is created on.
+ * Implementations are called by the {@link PlacementScheduler} one placement at a time.
+ */
+@FunctionalInterface
+public interface PlacementStrategy {
+
+    /**
+     * @param svcName   the service the container belongs to
+     * @param endpoints the available endpoints, never empty
+     * @param load      the containers placed so far, including the ones being created
+     */
+    DockerEndpoint choose(String svcName, List<DockerEndpoint> endpoints, PlacementLoad load);
+
+}
@@ -0,0 +1,124 @@
+package com.github.dockerunit.deployer.placement;
+
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceContext;
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.core.internal.ServiceContextBuilder;
+import com.github.dockerunit.core.internal.ServiceDescriptor;
+import com.github.dockerunit.core.internal.UsageDescriptor;
+import com.github.dockerunit.core.internal.service.DefaultServiceContext;
+import com.github.dockerunit.deployer.ServiceScaler;
+import com.github.dockerunit.deployer.util.Descriptors;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Creates the containers of the services on the endpoints chosen by the {@link PlacementScheduler}.
+ * With more than one endpoint, every replica is placed on its own, and the gateway address of its instances is set
+ * to the address of its endpoint, so that the discovery provider registers an address that can be reached.
+ * Whole usage descriptors, such as the discovery provider's, are always created on the default endpoint.
+ */
+public class PlacingContextBuilder implements ServiceContextBuilder {
+
+    @Override
+    public ServiceContext buildContext(UsageDescriptor descriptor) {
+        return PlacementScheduler.getDefaultEndpoint().getContextBuilder().buildContext(descriptor);
+    }
+
+    @Override
+    public ServiceContext buildServiceContext(ServiceDescriptor descriptor) {
+        String svcName = Descriptors.serviceName(descriptor);
+        if (!PlacementScheduler.isDistributed()) {
+            DockerEndpoint endpoint = PlacementScheduler.place(svcName);
+            return placed(endpoint, svcName, () -> endpoint.getContextBuilder().buildServiceContext(descriptor));
+        }
+
+        int replicas = Math.max(1, descriptor.getReplicas());
+        if (replicas == 1) {
+            return buildReplica(descriptor, svcName);
+        }
+        // Named containers get a random suffix, as replicas on different daemons are created separately
+        boolean randomise = descriptor.getContainerName() != null && !descriptor.getContainerName().isEmpty();
+        Set<ServiceInstance> instances = new HashSet<>();
+        for (int i = 0; i < replicas; i++) {
+            ServiceContext replica = buildReplica(ServiceScaler.buildDeltaDescriptor(descriptor, 1, randomise), svcName);
+            replica.getServices().forEach(svc -> instances.addAll(svc.getInstances()));
+        }
+        Set<Service> services = new HashSet<>();
+        services.add(new Service(svcName, instances, descriptor));
+        return new DefaultServiceContext(services);
+    }
+
+    private ServiceContext buildReplica(ServiceDescriptor descriptor, String svcName) {
+        DockerEndpoint endpoint = PlacementScheduler.place(svcName);
+        ServiceContext context = placed(endpoint, svcName, () -> endpoint.getContextBuilder().buildServiceContext(descriptor));
+        if (endpoint.getGatewayAddress() == null) {
+            return context;
+        }
+        return new DefaultServiceContext(context.getServices()
+                .stream()
+                .map(svc -> svc.withInstances(svc.getInstances()
+                        .stream()
+                        .map(si -> si.withGatewayAddress(endpoint.getGatewayAddress()))
+                        .collect(Collectors.toSet())))
+                .collect(Collectors.toSet()));
+    }
+
+    private static ServiceContext placed(DockerEndpoint endpoint, String svcName, Supplier<ServiceContext> build) {
+        ServiceContext context = null;
+        try {
+            context = build.get();
+            return context;
+        } finally {
+            PlacementScheduler.placed(endpoint, svcName,
+                    context == null ? new DefaultServiceContext(new HashSet<>()) : context);
+        }
+    }
+
+    /**
+     * Removes every container through the builder of the endpoint it has been placed on.
+     */
+    @Override
+    public ServiceContext clearContext(ServiceContext context) {
+        if (!PlacementScheduler.isDistributed()) {
+            context.getServices().forEach(svc -> svc.getInstances().forEach(si -> PlacementScheduler.release(si.getContainerId())));
+            return PlacementScheduler.getDefaultEndpoint().getContextBuilder().clearContext(context);
+        }
+        Map<DockerEndpoint, Set<Service>> servicesByEndpoint = new LinkedHashMap<>();
+        for (Service svc : context.getServices()) {
+            Map<DockerEndpoint, Set<ServiceInstance>> instancesByEndpoint = svc.getInstances()
+                    .stream()
+                    .collect(Collectors.groupingBy(
+                            si -> PlacementScheduler.endpointOf(si.getContainerId())
+                                    .orElseGet(PlacementScheduler::getDefaultEndpoint),
+                            LinkedHashMap::new, Collectors.toSet()));
+            if (instancesByEndpoint.isEmpty()) {
+                servicesByEndpoint.computeIfAbsent(PlacementScheduler.getDefaultEndpoint(), e -> new HashSet<>()).add(svc);
+            }
+            instancesByEndpoint.forEach((endpoint, instances) -> servicesByEndpoint
+                    .computeIfAbsent(endpoint, e -> new HashSet<>())
+                    .add(svc.withInstances(instances)));
+        }
+
+        Map<String, Set<ServiceInstance>> cleared = new LinkedHashMap<>();
+        Map<String, Service> clearedServices = new LinkedHashMap<>();
+        servicesByEndpoint.forEach((endpoint, services) -> {
+            ServiceContext result = endpoint.getContextBuilder().clearContext(new DefaultServiceContext(services));
+            for (Service svc : result.getServices()) {
+                clearedServices.putIfAbsent(svc.getName(), svc);
+                cleared.computeIfAbsent(svc.getName(), name -> new HashSet<>()).addAll(svc.getInstances());
+                svc.getInstances().forEach(si -> PlacementScheduler.release(si.getContainerId()));
+            }
+        });
+        return new DefaultServiceContext(clearedServices.values()
+                .stream()
+                .map(svc -> svc.withInstances(cleared.get(svc.getName())))
+                .collect(Collectors.toSet()));
+    }
+
+}
@@ -1,28 +1,54 @@
 package com.github.dockerunit.deployer.spring;
 
 import com.github.dockerunit.core.discovery.DiscoveryProvider;
-import com.github.dockerunit.core.discovery.DiscoveryProviderFactory;
 import com.github.dockerunit.core.internal.ServiceContextBuilder;
 import com.github.dockerunit.core.internal.ServiceContextBuilderFactory;
 import com.github.dockerunit.core.internal.reflect.DependencyDescriptorBuilderFactory;
 import com.github.dockerunit.core.internal.reflect.UsageDescriptorBuilder;
+import com.github.dockerunit.deployer.DeployerSettings;
+import com.github.dockerunit.deployer.DiscoveryProviders;
+import com.github.dockerunit.deployer.HealthMonitor;
+import com.github.dockerunit.deployer.JobQueue;
+import com.github.dockerunit.deployer.SessionStore;
 import com.github.dockerunit.deployer.SvcClassLoadingManager;
+import com.github.dockerunit.deployer.WarmPool;
+import com.github.dockerunit.deployer.autoscale.Autoscaler;
+import com.github.dockerunit.deployer.commands.AutoscaleCommands;
+import com.github.dockerunit.deployer.commands.JobCommands;
+import com.github.dockerunit.deployer.commands.LifecycleCommands;
+import com.github.dockerunit.deployer.commands.ListCommands;
+import com.github.dockerunit.deployer.commands.MetricsCommands;
+import com.github.dockerunit.deployer.commands.WatchCommands;
+import com.github.dockerunit.deployer.docker.ContainerEventSource;
+import com.github.dockerunit.deployer.docker.DockerEventSource;
+import com.github.dockerunit.deployer.docker.ImagePuller;
+import com.github.dockerunit.deployer.placement.PlacementScheduler;
+import com.github.dockerunit.deployer.placement.PlacingContextBuilder;
+import com.github.dockerunit.deployer.util.StartupTimings;
 import org.jline.utils.AttributedString;
 import org.jline.utils.AttributedStyle;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
-import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
 import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
 import org.springframework.shell.jline.PromptProvider;
 
 import java.util.Arrays;
-import java.util.ServiceLoader;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 
-@SpringBootApplication
-@ComponentScan("com.github.dockerunit.deployer.commands")
+// Shell components are imported explicitly, which spares a classpath scan at every startup
+@Configuration
+@EnableAutoConfiguration
+@Import({LifecycleCommands.class, ListCommands.class, MetricsCommands.class, WatchCommands.class, JobCommands.class,
+        AutoscaleCommands.class})
 public class ShellLauncher {
 
 
@@ -34,17 +60,46 @@ public class ShellLauncher {
     private static DiscoveryProvider discoveryProvider;
 
     private static final UsageDescriptorBuilder descriptorBuilder = DependencyDescriptorBuilderFactory.create();
-    private static final ServiceContextBuilder contextBuilder = ServiceContextBuilderFactory.create();
+    // Containers are created on the Docker endpoints chosen by the placement scheduler
+    private static final ServiceContextBuilder contextBuilder = new PlacingContextBuilder();
 
 
     public static void run(String[] args) throws Exception {
-        initDiscovery();
-        SvcClassLoadingManager.initialiseClassLoader(Arrays.asList(Arrays.copyOfRange(args, 1, args.length))
+        run(args[0], Arrays.asList(Arrays.copyOfRange(args, 1, args.length))
                 .stream()
                 .filter(arg -> !arg.equals(CLASSPATH_OPTION))
                 .collect(Collectors.toList()));
-        SvcClassLoadingManager.loadClass(args[0]);
-        SpringApplication.run(ShellLauncher.class, args);
+    }
+
+    /**
+     * Starts the shell for the given service class. The class is only loaded when the services are started.
+     */
+    public static void run(String className, List<String> classpath) throws Exception {
+        run(Collections.singletonMap(SvcClassLoadingManager.DEFAULT_STACK, className), classpath);
+    }
+
+    /**
+     * Starts the shell for the given stacks, sharing a single discovery provider.
+     *
+     * @param stacks the service class of every stack, by stack name
+     */
+    public static void run(Map<String, String> stacks, List<String> classpath) throws Exception {
+        initDiscovery();
+        PlacementScheduler.configure(ServiceContextBuilderFactory.create());
+        StartupTimings.phase("discovery-provider");
+        SvcClassLoadingManager.initialiseClassLoader(classpath);
+        SvcClassLoadingManager.setStacks(stacks);
+        StartupTimings.phase("class-loader");
+        SpringApplication.run(ShellLauncher.class);
+    }
+
+    @Bean
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public ApplicationRunner startupTimingsReporter() {
+        return args -> {
+            StartupTimings.phase("shell");
+            StartupTimings.log();
+        };
     }
 
     @Bean
@@ -67,20 +122,43 @@ public class ShellLauncher {
         return descriptorBuilder;
     }
 
-    private static void initDiscovery() {
-        ServiceLoader<DiscoveryProviderFactory> loader = ServiceLoader.load(DiscoveryProviderFactory.class);
-
-        discoveryProvider = StreamSupport.stream(loader.spliterator(), false)
-                .peek(impl -> logger.info(
-                        "Found discovery provider factory of type " + impl.getClass().getSimpleName()))
-                .findFirst()
-                .map(impl -> {
-                    logger.info("Using discovery provider factory " + impl.getClass().getSimpleName());
-                    return impl;
-                })
-                .map(DiscoveryProviderFactory::getProvider)
-                .orElseThrow(() -> new RuntimeException("No discovery provider factory found. Aborting."));
+    @Bean
+    public WarmPool getWarmPool() {
+        return new WarmPool(contextBuilder);
+    }
 
+    @Bean
+    public HealthMonitor getHealthMonitor(WarmPool warmPool, JobQueue jobQueue) {
+        return new HealthMonitor(contextBuilder, discoveryProvider, warmPool, jobQueue);
+    }
+
+    @Bean
+    public JobQueue getJobQueue() {
+        return new JobQueue();
+    }
+
+    @Bean
+    public Autoscaler getAutoscaler(WarmPool warmPool, JobQueue jobQueue) {
+        return new Autoscaler(contextBuilder, discoveryProvider, warmPool, jobQueue);
+    }
+
+    @Bean
+    public SessionStore getSessionStore() {
+        return new SessionStore(DeployerSettings.getSessionFile());
+    }
+
+    @Bean
+    public ImagePuller getImagePuller() {
+        return new ImagePuller();
+    }
+
+    @Bean
+    public ContainerEventSource getContainerEventSource() {
+        return new DockerEventSource();
+    }
+
+    private static void initDiscovery() {
+        discoveryProvider = DiscoveryProviders.load();
     }
 
 }
@@ -0,0 +1,42 @@
+package com.github.dockerunit.deployer.util;
+
+import com.github.dockerunit.core.internal.ServiceDescriptor;
+
+import java.util.Objects;
+
+public class Descriptors {
+
+    public static String serviceName(ServiceDescriptor sd) {
+        return sd.getSvcDefinition().name();
+    }
+
+    public static String image(ServiceDescriptor sd) {
+        return sd.getSvcDefinition().image();
+    }
+
+    /**
+     * Computes a fingerprint of everything that defines the containers of a service:
+     * the svc definition (name and image), the options, the number of replicas and the customisation hook.
+     * Two descriptors with the same fingerprint produce equivalent containers.
+     */
+    public static String fingerprint(ServiceDescriptor sd) {
+        return Hashes.sha256(String.join("\n", containerDefinition(sd), String.valueOf(sd.getReplicas())));
+    }
+
+    /**
+     * Computes a fingerprint of the containers of a service, whatever the number of replicas, so that replicas
+     * with the same fingerprint are interchangeable.
+     */
+    public static String replicaFingerprint(ServiceDescriptor sd) {
+        return Hashes.sha256(containerDefinition(sd));
+    }
+
+    private static String containerDefinition(ServiceDescriptor sd) {
+        return String.join("\n",
+                Objects.toString(sd.getSvcDefinition()),
+                Objects.toString(sd.getOptions()),
+                Objects.toString(sd.getContainerName()),
+                Objects.toString(sd.getCustomisationHook()));
+    }
+
+}
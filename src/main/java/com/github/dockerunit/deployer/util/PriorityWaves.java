@@ -0,0 +1,25 @@
+package com.github.dockerunit.deployer.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * Groups items into waves of equal priority.
+ * Waves are returned with the highest priority first, which is the order Dockerunit starts services in.
+ * Items within a wave keep their original relative order.
+ */
+public class PriorityWaves {
+
+    public static <T> List<List<T>> group(Collection<T> items, ToIntFunction<T> priority) {
+        Map<Integer, List<T>> waves = new TreeMap<>((p1, p2) -> Integer.compare(p2, p1));
+        for (T item : items) {
+            waves.computeIfAbsent(priority.applyAsInt(item), p -> new ArrayList<>()).add(item);
+        }
+        return new ArrayList<>(waves.values());
+    }
+
+}
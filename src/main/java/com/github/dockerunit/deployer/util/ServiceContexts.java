@@ -0,0 +1,41 @@
+package com.github.dockerunit.deployer.util;
+
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceContext;
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.core.internal.service.DefaultServiceContext;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+public class ServiceContexts {
+
+    private static final Logger logger = Logger.getLogger(ServiceContexts.class.getSimpleName());
+
+    /**
+     * Merges all the given contexts in a single pass.
+     * If more than one context declares a service with the same name, the collision is logged and the instances
+     * are merged under the descriptor of the first occurrence, as {@link ServiceContext#merge(ServiceContext)} would do.
+     */
+    public static ServiceContext mergeAll(Collection<ServiceContext> contexts) {
+        Map<String, Service> services = new LinkedHashMap<>();
+        Map<String, Set<ServiceInstance>> collisions = new LinkedHashMap<>();
+        for (ServiceContext context : contexts) {
+            for (Service svc : context.getServices()) {
+                Service existing = services.putIfAbsent(svc.getName(), svc);
+                if (existing != null) {
+                    logger.warning("Svc " + svc.getName() + " is declared more than once, merging its instances.");
+                    collisions.computeIfAbsent(svc.getName(), name -> new HashSet<>(existing.getInstances()))
+                            .addAll(svc.getInstances());
+                }
+            }
+        }
+        collisions.forEach((name, instances) -> services.put(name, services.get(name).withInstances(instances)));
+        return new DefaultServiceContext(new HashSet<>(services.values()));
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.github.dockerunit.deployer.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Records how long each phase of the plugin startup takes, from the mojo execution to the shell prompt.
+ */
+public class StartupTimings {
+
+    private static final Logger logger = Logger.getLogger(StartupTimings.class.getSimpleName());
+
+    private static final Map<String, Long> phases = new LinkedHashMap<>();
+
+    private static long origin = System.nanoTime();
+    private static long last = origin;
+
+    public static synchronized void reset() {
+        phases.clear();
+        origin = System.nanoTime();
+        last = origin;
+    }
+
+    /**
+     * Marks the end of a phase, which is assumed to have started when the previous one ended.
+     */
+    public static synchronized void phase(String name) {
+        long now = System.nanoTime();
+        phases.merge(name, (now - last) / 1_000_000, Long::sum);
+        last = now;
+    }
+
+    public static synchronized Map<String, Long> getPhases() {
+        return new LinkedHashMap<>(phases);
+    }
+
+    public static synchronized void log() {
+        logger.info(String.format("Startup took %d ms (%s)", (last - origin) / 1_000_000,
+                phases.entrySet()
+                        .stream()
+                        .map(e -> e.getKey() + ": " + e.getValue() + " ms")
+                        .collect(Collectors.joining(", "))));
+    }
+
+}
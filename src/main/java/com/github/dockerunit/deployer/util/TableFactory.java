@@ -1,7 +1,11 @@
 package com.github.dockerunit.deployer.util;
 
+import lombok.Value;
 import org.springframework.shell.table.*;
 
+import java.util.List;
+import java.util.function.Function;
+
 public class TableFactory {
 
 
@@ -19,26 +23,38 @@ public class TableFactory {
     }
 
     public static Table createTable(String[][] content) {
-        TableModel model = new ArrayTableModel(content);
-        TableBuilder tableBuilder = new TableBuilder(model);
         for(int i = 0; i < content.length; i++) {
             for(int j = 0; j < content[i].length; j++) {
                 content[i][j] = content[i][j] == null ? "" : content[i][j];
-                tableBuilder.on(at(i, j)).addAligner(SimpleHorizontalAligner.center);
-                tableBuilder.on(at(i, j)).addAligner(getVerticalAligner(content.length, i));
             }
         }
-        return tableBuilder.addFullBorder(BorderStyle.fancy_light).build();
+        return build(new ArrayTableModel(content));
     }
 
-    private static SimpleVerticalAligner getVerticalAligner(int length, int i) {
-        if(i == 0) {
-            return SimpleVerticalAligner.top;
-        } else if (i == length - 1) {
-            return  SimpleVerticalAligner.bottom;
-        } else {
-            return SimpleVerticalAligner.middle;
+    /**
+     * Creates a table whose cells are only formatted when the table is rendered, one row at the time.
+     * Filter, sort and page the rows beforehand, so that only the visible ones are formatted.
+     */
+    public static <T> Table createTable(List<Column<T>> columns, List<T> rows) {
+        return build(new RowTableModel<>(columns, rows));
+    }
+
+    // Aligners are registered once per table region rather than once per cell, so that
+    // the builder does not have to evaluate a matcher per cell for every cell
+    private static Table build(TableModel model) {
+        TableBuilder tableBuilder = new TableBuilder(model);
+        int lastRow = model.getRowCount() - 1;
+        tableBuilder.on(CellMatchers.table()).addAligner(SimpleHorizontalAligner.center);
+        tableBuilder.on(CellMatchers.row(0)).addAligner(SimpleVerticalAligner.top);
+        if (lastRow > 0) {
+            tableBuilder.on(rowsBetween(1, lastRow - 1)).addAligner(SimpleVerticalAligner.middle);
+            tableBuilder.on(CellMatchers.row(lastRow)).addAligner(SimpleVerticalAligner.bottom);
         }
+        return tableBuilder.addFullBorder(BorderStyle.fancy_light).build();
+    }
+
+    public static CellMatcher rowsBetween(final int firstRow, final int lastRow) {
+        return (row, column, model) -> row >= firstRow && row <= lastRow;
     }
 
     public static CellMatcher at(final int theRow, final int col) {
@@ -49,4 +65,51 @@ public class TableFactory {
             }
         };
     }
+
+    @Value
+    public static class Column<T> {
+        private final String header;
+        private final Function<T, String> formatter;
+    }
+
+    private static class RowTableModel<T> extends TableModel {
+
+        private final List<Column<T>> columns;
+        private final List<T> rows;
+        private final String[][] formatted;
+
+        private RowTableModel(List<Column<T>> columns, List<T> rows) {
+            this.columns = columns;
+            this.rows = rows;
+            this.formatted = new String[rows.size()][];
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size() + 1;
+        }
+
+        @Override
+        public int getColumnCount() {
+            return columns.size();
+        }
+
+        @Override
+        public Object getValue(int row, int column) {
+            if (row == 0) {
+                return columns.get(column).getHeader();
+            }
+            String[] values = formatted[row - 1];
+            if (values == null) {
+                values = new String[columns.size()];
+                T item = rows.get(row - 1);
+                for (int i = 0; i < values.length; i++) {
+                    String value = columns.get(i).getFormatter().apply(item);
+                    values[i] = value == null ? "" : value;
+                }
+                formatted[row - 1] = values;
+            }
+            return values[column];
+        }
+    }
 }
@@ -0,0 +1,21 @@
+package com.github.dockerunit.deployer.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ThreadFactories {
+
+    /**
+     * Creates a factory of daemon threads named after the given prefix, so that
+     * pending work never prevents the shell from exiting.
+     */
+    public static ThreadFactory named(String prefix) {
+        final AtomicInteger counter = new AtomicInteger(0);
+        return runnable -> {
+            Thread t = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+}
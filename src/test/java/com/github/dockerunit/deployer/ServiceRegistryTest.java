@@ -0,0 +1,109 @@
+package com.github.dockerunit.deployer;
+
+import com.github.dockerunit.core.Service;
+import com.github.dockerunit.core.ServiceInstance;
+import com.github.dockerunit.core.internal.service.DefaultServiceContext;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ServiceRegistryTest {
+
+    @Test
+    public void mergesTheInstancesOfAServiceByContainerId() {
+        ServiceRegistry registry = ServiceRegistry.empty()
+                .withInstances("web", null, Arrays.asList(instance("1", ServiceInstance.Status.STARTED),
+                        instance("2", ServiceInstance.Status.STARTED)))
+                .withInstances("web", null, Arrays.asList(instance("2", ServiceInstance.Status.DISCOVERED),
+                        instance("3", ServiceInstance.Status.DISCOVERED)));
+
+        assertEquals(3, registry.getService("web").getInstances().size());
+        assertEquals(ServiceInstance.Status.STARTED, registry.getInstance("web", "1").getStatus());
+        assertEquals(ServiceInstance.Status.DISCOVERED, registry.getInstance("web", "2").getStatus());
+        assertEquals(3, registry.getInstancesCount());
+    }
+
+    @Test
+    public void removesInstancesAndServices() {
+        ServiceInstance first = instance("1", ServiceInstance.Status.DISCOVERED);
+        ServiceInstance second = instance("2", ServiceInstance.Status.DISCOVERED);
+        ServiceRegistry registry = ServiceRegistry.empty()
+                .withInstances("web", null, Arrays.asList(first, second))
+                .withInstance("db", null, instance("3", ServiceInstance.Status.DISCOVERED));
+
+        ServiceRegistry withoutFirst = registry.withoutInstances("web", Collections.singleton(first));
+        assertEquals(Collections.singleton(second), withoutFirst.getService("web").getInstances());
+        assertNull(withoutFirst.getInstance("web", "1"));
+
+        ServiceRegistry withoutWeb = withoutFirst.withoutInstances("web", Collections.singleton(second))
+                .withoutService("web");
+        assertNull(withoutWeb.getService("web"));
+        assertEquals(Collections.singleton("db"), withoutWeb.getServiceNames());
+        assertTrue(withoutWeb.withoutService("db").isEmpty());
+        assertSame(withoutWeb, withoutWeb.withoutService("unknown"));
+    }
+
+    @Test
+    public void leavesThePreviousRegistriesUnchanged() {
+        ServiceRegistry first = ServiceRegistry.empty()
+                .withInstance("web", null, instance("1", ServiceInstance.Status.STARTED));
+        ServiceRegistry second = first.withInstance("web", null, instance("1", ServiceInstance.Status.DISCOVERED))
+                .withInstance("db", null, instance("2", ServiceInstance.Status.STARTED));
+        ServiceRegistry third = second.withoutService("web");
+
+        assertEquals(ServiceInstance.Status.STARTED, first.getInstance("web", "1").getStatus());
+        assertNull(first.getService("db"));
+        assertEquals(ServiceInstance.Status.DISCOVERED, second.getInstance("web", "1").getStatus());
+        assertNull(third.getService("web"));
+        assertEquals(1, third.getInstancesCount());
+    }
+
+    @Test
+    public void keepsTheInstancesWithoutContainerIdOrName() {
+        // Aborted instances may have neither, so they are told apart by identity
+        ServiceInstance first = ServiceInstance.builder()
+                .status(ServiceInstance.Status.ABORTED)
+                .statusDetails("first")
+                .build();
+        ServiceInstance second = ServiceInstance.builder()
+                .status(ServiceInstance.Status.ABORTED)
+                .statusDetails("second")
+                .build();
+        ServiceRegistry registry = ServiceRegistry.empty().withInstances("web", null, Arrays.asList(first, second));
+
+        assertEquals(2, registry.getService("web").getInstances().size());
+        assertEquals(Collections.singleton(second),
+                registry.withoutInstances("web", Collections.singleton(first)).getService("web").getInstances());
+    }
+
+    @Test
+    public void findsTheServiceOfAContainerAndMergesContexts() {
+        Set<Service> services = new HashSet<>();
+        services.add(new Service("web", new HashSet<>(Arrays.asList(instance("1", ServiceInstance.Status.DISCOVERED),
+                instance("2", ServiceInstance.Status.DISCOVERED))), null));
+        services.add(new Service("db", Collections.singleton(instance("3", ServiceInstance.Status.DISCOVERED)), null));
+        ServiceRegistry registry = ServiceRegistry.of(new DefaultServiceContext(services));
+
+        assertEquals("db", registry.findServiceByContainerId("3").getName());
+        assertNull(registry.findServiceByContainerId("4"));
+        assertEquals(2, registry.getServices().size());
+        assertEquals(2, registry.toContext().getService("web").getInstances().size());
+    }
+
+    private static ServiceInstance instance(String containerId, ServiceInstance.Status status) {
+        return ServiceInstance.builder()
+                .containerId(containerId)
+                .containerName("container-" + containerId)
+                .status(status)
+                .build();
+    }
+
+}
@@ -0,0 +1,185 @@
+package com.github.dockerunit.deployer.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PersistentMapTest {
+
+    // Hashes that share the bits of the first levels, so that the keys end up in deep and collision nodes
+    private static final int[] HASHES = {0, 1, 32, 1 << 10, 1 << 20, 1 << 30, 0x80000000, 0xC0000000, 0x7FFFFFFF, -1};
+
+    @Test
+    public void getsTheEntriesThatHaveBeenAdded() {
+        PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty()
+                .plus("a", 1)
+                .plus("b", 2)
+                .plus("a", 3);
+
+        assertEquals(2, map.size());
+        assertEquals(Integer.valueOf(3), map.get("a"));
+        assertEquals(Integer.valueOf(2), map.get("b"));
+        assertNull(map.get("c"));
+        assertFalse(map.containsKey("c"));
+    }
+
+    @Test
+    public void leavesThePreviousMapsUnchanged() {
+        PersistentMap<String, Integer> first = PersistentMap.<String, Integer>empty().plus("a", 1);
+        PersistentMap<String, Integer> second = first.plus("b", 2).plus("a", 3);
+        PersistentMap<String, Integer> third = second.minus("a");
+
+        assertEquals(1, first.size());
+        assertEquals(Integer.valueOf(1), first.get("a"));
+        assertFalse(first.containsKey("b"));
+        assertEquals(Integer.valueOf(3), second.get("a"));
+        assertFalse(third.containsKey("a"));
+        assertEquals(Integer.valueOf(2), third.get("b"));
+    }
+
+    @Test
+    public void returnsTheSameMapWhenNothingChanges() {
+        Integer value = 1;
+        PersistentMap<String, Integer> map = PersistentMap.<String, Integer>empty().plus("a", value);
+
+        assertSame(map, map.plus("a", value));
+        assertSame(map, map.minus("b"));
+    }
+
+    @Test
+    public void keepsTheKeysWithTheSameHashApart() {
+        Key a = new Key(1, 7);
+        Key b = new Key(2, 7);
+        Key c = new Key(3, 7);
+        PersistentMap<Key, String> map = PersistentMap.<Key, String>empty()
+                .plus(a, "a")
+                .plus(b, "b")
+                .plus(c, "c");
+
+        assertEquals(3, map.size());
+        assertEquals("b", map.get(b));
+        assertNull(map.get(new Key(4, 7)));
+
+        PersistentMap<Key, String> removed = map.minus(b);
+        assertEquals(2, removed.size());
+        assertNull(removed.get(b));
+        assertEquals("a", removed.get(a));
+        assertEquals("c", removed.get(c));
+
+        PersistentMap<Key, String> empty = removed.minus(a).minus(c);
+        assertTrue(empty.isEmpty());
+        assertEquals(0, empty.keySet().size());
+    }
+
+    @Test
+    public void splitsCollisionNodesWhenAnotherHashReachesThem() {
+        Key a = new Key(1, 0);
+        Key b = new Key(2, 0);
+        // Once spread, this hash only differs from the colliding ones in its top bits, which index the last level
+        Key c = new Key(3, 0x40004000);
+        PersistentMap<Key, String> map = PersistentMap.<Key, String>empty()
+                .plus(a, "a")
+                .plus(b, "b")
+                .plus(c, "c");
+
+        assertEquals(3, map.size());
+        assertEquals("a", map.get(a));
+        assertEquals("b", map.get(b));
+        assertEquals("c", map.get(c));
+        assertEquals("c", map.minus(a).minus(b).get(c));
+        assertEquals("a", map.minus(c).get(a));
+    }
+
+    @Test
+    public void behavesLikeAHashMapAcrossCollidingHashesAndRemovals() {
+        Random random = new Random(42);
+        List<Key> keys = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            keys.add(new Key(i, i < 100 ? HASHES[i % HASHES.length] : random.nextInt()));
+        }
+
+        Map<Key, Integer> expected = new HashMap<>();
+        PersistentMap<Key, Integer> map = PersistentMap.empty();
+        List<Map<Key, Integer>> expectedVersions = new ArrayList<>();
+        List<PersistentMap<Key, Integer>> versions = new ArrayList<>();
+        for (int step = 0; step < 20_000; step++) {
+            Key key = keys.get(random.nextInt(keys.size()));
+            // Removals are as frequent as additions, so that nodes keep being emptied and collapsed
+            if (random.nextBoolean()) {
+                expected.put(key, step);
+                map = map.plus(key, step);
+            } else {
+                expected.remove(key);
+                map = map.minus(key);
+            }
+            if (step % 500 == 0) {
+                expectedVersions.add(new HashMap<>(expected));
+                versions.add(map);
+            }
+            assertEquals(expected.size(), map.size());
+            assertEquals(expected.get(key), map.get(key));
+        }
+
+        assertSameEntries(expected, map, keys);
+        for (int i = 0; i < versions.size(); i++) {
+            assertSameEntries(expectedVersions.get(i), versions.get(i), keys);
+        }
+    }
+
+    private static void assertSameEntries(Map<Key, Integer> expected, PersistentMap<Key, Integer> map, List<Key> keys) {
+        assertEquals(expected.size(), map.size());
+        assertEquals(expected.isEmpty(), map.isEmpty());
+        for (Key key : keys) {
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+            assertEquals(expected.get(key), map.get(key));
+        }
+
+        Map<Key, Integer> iterated = new HashMap<>();
+        map.forEach((key, value) -> assertNull("Key iterated twice: " + key, iterated.put(key, value)));
+        assertEquals(expected, iterated);
+        assertEquals(expected.keySet(), map.keySet());
+        List<Integer> values = map.values();
+        assertEquals(expected.size(), values.size());
+        assertTrue(values.containsAll(expected.values()));
+    }
+
+    /**
+     * A key whose hash is chosen by the test.
+     */
+    private static final class Key {
+
+        private final int id;
+        private final int hash;
+
+        private Key(int id, int hash) {
+            this.id = id;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && ((Key) o).id == id;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public String toString() {
+            return "Key(" + id + ", " + hash + ")";
+        }
+    }
+
+}